@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * DID documents and ledgers as they are written by the piveau connector.
+ */
+final class BenchmarkDocuments {
+
+    /**
+     * Every n-th dataset of a benchmark ledger belongs to the benchmark client.
+     */
+    static final int CLIENT_SHARE = 1000;
+
+    static final DatasetOwner CLIENT = new DatasetOwner("user", "Glass01MSP");
+
+    private BenchmarkDocuments() { }
+
+    static String did(final int index) {
+        return String.format("did:dcat:dataset:%08d", index);
+    }
+
+    /**
+     * @param did the did of the dataset
+     * @param services number of distribution services, to scale the size of the document
+     * @return a DID document
+     */
+    static String didDocument(final String did, final int services) {
+        JSONObject document = new JSONObject()
+                .put("@context", new JSONArray().put("https://www.w3.org/ns/did/v1").put("https://did4dcat.org/context/v1"))
+                .put("id", did)
+                .put("controller", "did:dcat:provider:example-provider")
+                .put("@url", new JSONObject().put("@id", "http://data.europa.eu/88u/dataset/" + did.substring(17)))
+                .put("issued", "2022-09-19T18:05:20.997")
+                .put("modified", "2022-09-20T20:05:20.997")
+                .put("hash", new JSONObject().put("value", "f4389t356t7zw457zn547zw4").put("alg", "URDNA2015"));
+
+        if (services > 0) {
+            JSONArray service = new JSONArray();
+            for (int i = 0; i < services; i++) {
+                service.put(new JSONObject()
+                        .put("id", did + "#distribution-" + i)
+                        .put("type", "DistributionService")
+                        .put("serviceEndpoint", "http://data.europa.eu/88u/distribution/" + did.substring(17) + "-" + i));
+            }
+            document.put("service", service);
+        }
+        return document.toString();
+    }
+
+    /**
+     * Fills the world state of a stub with datasets and their owner index entries.
+     */
+    static void populate(final InMemoryChaincodeStub stub, final int size, final int services) {
+        for (int i = 0; i < size; i++) {
+            String did = did(i);
+            DatasetOwner owner = i % CLIENT_SHARE == 0
+                    ? CLIENT : new DatasetOwner("user" + i % CLIENT_SHARE, "Glass01MSP");
+            Dataset dataset = new Dataset(did, didDocument(did, services), owner);
+
+            stub.getWorldState().put(DatasetManagement.datasetKey(did), DatasetCodec.encode(dataset));
+            stub.getWorldState().put(DatasetManagement.ownerIndexKey(dataset), DatasetManagement.INDEX_VALUE.getBytes());
+            stub.getWorldState().put(DatasetSummary.key(did), DatasetSummary.toJson(dataset,
+                    DidDocumentFields.scan(dataset.getDidDocument())).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
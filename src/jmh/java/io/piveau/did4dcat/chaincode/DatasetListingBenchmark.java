@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing of all datasets of an in-memory ledger.
+ *
+ * The response contains every DID document, with 100 services a dataset takes about 17k chars. The ledger
+ * size is capped, so the response fits into the heap of the fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DatasetListingBenchmark {
+
+    @Param({"1000", "10000"})
+    private int ledgerSize;
+
+    @Param({"0", "100"})
+    private int services;
+
+    private DatasetManagement contract;
+
+    private InMemoryChaincodeStub stub;
+
+    private long transactions;
+
+    @Setup(Level.Trial)
+    public final void setUp() {
+        contract = new DatasetManagement();
+        stub = new InMemoryChaincodeStub(CertificateUtil.getValidCreator());
+        BenchmarkDocuments.populate(stub, ledgerSize, services);
+    }
+
+    @Benchmark
+    public final String getAllDatasets() {
+        stub.beginTransaction("tx" + ++transactions, Instant.EPOCH);
+        return contract.GetAllDatasets(contract.createContext(stub));
+    }
+}
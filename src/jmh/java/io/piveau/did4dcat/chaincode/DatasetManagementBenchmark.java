@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transactions of the contract against an in-memory ledger.
+ *
+ * Every invocation runs in a new transaction context. Writes are never committed, so the ledger
+ * keeps its size over the whole run. Listings of the whole ledger are measured by
+ * {@link DatasetListingBenchmark}, their responses grow with the ledger. The documents stay below
+ * the compression threshold, filling a ledger of a million compressed documents would take longer than the run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DatasetManagementBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int ledgerSize;
+
+    @Param({"0", "10"})
+    private int services;
+
+    private DatasetManagement contract;
+
+    private InMemoryChaincodeStub stub;
+
+    private String newDocument;
+
+    private String updatedDocument;
+
+    private long transactions;
+
+    @Setup(Level.Trial)
+    public final void setUp() {
+        contract = new DatasetManagement();
+        stub = new InMemoryChaincodeStub(CertificateUtil.getValidCreator());
+        BenchmarkDocuments.populate(stub, ledgerSize, services);
+
+        newDocument = BenchmarkDocuments.didDocument("did:dcat:dataset:new", services);
+        updatedDocument = BenchmarkDocuments.didDocument(BenchmarkDocuments.did(0), services)
+                .replace("2022-09-20T20:05:20.997", "2022-10-01T08:00:00.000");
+    }
+
+    private Context newTransaction() {
+        stub.beginTransaction("tx" + ++transactions, Instant.EPOCH);
+        return contract.createContext(stub);
+    }
+
+    @Benchmark
+    public final Dataset createDataset() {
+        return contract.CreateDataset(newTransaction(), newDocument);
+    }
+
+    @Benchmark
+    public final Dataset updateDataset() {
+        return contract.UpdateDataset(newTransaction(), updatedDocument);
+    }
+
+    @Benchmark
+    public final Dataset readDataset() {
+        Context ctx = newTransaction();
+        return contract.ReadDataset(ctx, BenchmarkDocuments.did((int) (transactions % ledgerSize)));
+    }
+
+    @Benchmark
+    public final String getMyDatasets() {
+        return contract.GetMyDatasets(newTransaction());
+    }
+
+    @Benchmark
+    public final String getMyDatasetSummaries() {
+        return contract.GetMyDatasetSummaries(newTransaction(), DatasetManagement.MAX_PAGE_SIZE, "");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.owlike.genson.Genson;
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.protos.msp.SerializedIdentity;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The building blocks of the transactions: record encoding, DID document parsing and writing, and owner resolution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"0", "10", "100"})
+    private int services;
+
+    private final Genson genson = new Genson();
+
+    private Dataset dataset;
+
+    private String legacyRecord;
+
+    private byte[] binaryRecord;
+
+    private String canonicalDocument;
+
+    private InMemoryChaincodeStub stub;
+
+    private ClientIdentity clientIdentity;
+
+    private InMemoryChaincodeStub[] uncachedStubs;
+
+    private int nextStub;
+
+    @Setup
+    public final void setUp() throws CertificateException, IOException {
+        String did = BenchmarkDocuments.did(1);
+        dataset = new Dataset(did, BenchmarkDocuments.didDocument(did, services), BenchmarkDocuments.CLIENT);
+        legacyRecord = genson.serialize(dataset);
+        binaryRecord = DatasetCodec.encode(dataset);
+        canonicalDocument = CanonicalJson.canonicalize(dataset.getDidDocument());
+        stub = new InMemoryChaincodeStub(CertificateUtil.getValidCreator());
+        clientIdentity = new ClientIdentity(stub);
+
+        // Owners are cached by certificate and MSP ID. Cycling through more identities than the cache holds
+        // evicts every identity before it is used again.
+        SerializedIdentity creator = SerializedIdentity.parseFrom(CertificateUtil.getValidCreator());
+        uncachedStubs = new InMemoryChaincodeStub[2 * DatasetManagement.OWNER_CACHE_CAPACITY];
+        for (int i = 0; i < uncachedStubs.length; i++) {
+            byte[] identity = creator.toBuilder().setMspid("Benchmark" + i + "MSP").build().toByteArray();
+            uncachedStubs[i] = new InMemoryChaincodeStub(identity);
+        }
+    }
+
+    @Benchmark
+    public final Dataset gensonRoundTrip() {
+        return genson.deserialize(genson.serialize(dataset), Dataset.class);
+    }
+
+    @Benchmark
+    public final Dataset gensonDeserialize() {
+        return genson.deserialize(legacyRecord, Dataset.class);
+    }
+
+    @Benchmark
+    public final Dataset codecRoundTrip() {
+        return DatasetCodec.decode(DatasetCodec.encode(dataset));
+    }
+
+    @Benchmark
+    public final Dataset codecDecode() {
+        return DatasetCodec.decode(binaryRecord);
+    }
+
+    @Benchmark
+    public final String parseDidDocumentWithOrgJson() {
+        return new JSONObject(dataset.getDidDocument()).getString("id");
+    }
+
+    @Benchmark
+    public final String scanDidDocument() {
+        return DidDocumentFields.scan(dataset.getDidDocument()).getString(DidDocumentFields.ID);
+    }
+
+    @Benchmark
+    public final String writeDidDocumentWithOrgJson() {
+        return new JSONObject(dataset.getDidDocument()).toString();
+    }
+
+    @Benchmark
+    public final String writeDidDocumentWithGenson() {
+        return genson.serialize(genson.deserialize(dataset.getDidDocument(), Map.class));
+    }
+
+    @Benchmark
+    public final String canonicalizeDidDocument() {
+        return CanonicalJson.canonicalize(dataset.getDidDocument());
+    }
+
+    @Benchmark
+    public final String canonicalizeCanonicalDidDocument() {
+        return CanonicalJson.canonicalize(canonicalDocument);
+    }
+
+    @Benchmark
+    public final DatasetOwner convertClientIdentityToOwner() {
+        return DatasetManagement.convertClientIdentityToOwner(clientIdentity);
+    }
+
+    @Benchmark
+    public final DatasetOwner resolveOwnerOfNewClientIdentityWithCachedOwner()
+            throws CertificateException, IOException {
+        return DatasetManagement.convertClientIdentityToOwner(new ClientIdentity(stub));
+    }
+
+    @Benchmark
+    public final DatasetOwner resolveOwnerOfNewClientIdentityWithUncachedOwner()
+            throws CertificateException, IOException {
+        InMemoryChaincodeStub next = uncachedStubs[nextStub];
+        nextStub = (nextStub + 1) % uncachedStubs.length;
+        return DatasetManagement.convertClientIdentityToOwner(new ClientIdentity(next));
+    }
+}
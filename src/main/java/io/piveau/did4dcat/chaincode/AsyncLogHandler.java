@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records over to a background thread, which publishes them to a delegate handler.
+ *
+ * Transactions never wait for the output: when the bounded buffer is full, records are dropped
+ * and the number of dropped records is logged once there is room again.
+ */
+final class AsyncLogHandler extends Handler {
+
+    private final Handler delegate;
+
+    private final BlockingQueue<LogRecord> buffer;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread worker;
+
+    private volatile boolean closed;
+
+    AsyncLogHandler(final Handler delegate, final int capacity) {
+        this.delegate = delegate;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.worker = new Thread(this::publishBuffered, "did4dcat-log");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!buffer.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    /**
+     * Publishes the buffered records and stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    long getDroppedRecords() {
+        return dropped.get();
+    }
+
+    private void publishBuffered() {
+        while (!closed || !buffer.isEmpty()) {
+            LogRecord record;
+            try {
+                record = buffer.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                record = buffer.poll();
+            }
+            if (record == null) {
+                continue;
+            }
+
+            long droppedRecords = dropped.getAndSet(0);
+            if (droppedRecords > 0) {
+                LogRecord warning = new LogRecord(Level.WARNING, "Log buffer full, dropped {0} records");
+                warning.setLoggerName(record.getLoggerName());
+                warning.setParameters(new Object[] {droppedRecords});
+                delegate.publish(warning);
+            }
+
+            delegate.publish(record);
+            if (buffer.isEmpty()) {
+                delegate.flush();
+            }
+        }
+    }
+}
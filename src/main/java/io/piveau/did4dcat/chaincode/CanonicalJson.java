@@ -0,0 +1,317 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Writes JSON texts in the canonical form of the JSON Canonicalization Scheme (RFC 8785), so every endorsing peer
+ * stores the same bytes for the same document, independent of whitespace, key order and the JSON library.
+ *
+ * The text is rewritten while it is scanned, without building a tree: members are written in the order they appear
+ * and only objects whose keys are not sorted yet are reordered. The output buffer is reused per thread.
+ * Numbers are written like ECMAScript does, integers of up to 15 digits are copied as they are.
+ */
+final class CanonicalJson {
+
+    /**
+     * Output buffers growing beyond this number of characters are not kept for the next document.
+     */
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private static final int MAX_DOUBLE_DIGITS = 17;
+
+    private static final int MAX_PLAIN_EXPONENT = 21;
+
+    private static final int MIN_PLAIN_EXPONENT = -6;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    private static final Comparator<Member> BY_KEY = Comparator.comparing(member -> member.key);
+
+    private final JsonScanner scanner;
+
+    private final String json;
+
+    private final StringBuilder out;
+
+    private int depth;
+
+    private CanonicalJson(final String json, final StringBuilder out) {
+        this.scanner = new JsonScanner(json);
+        this.json = json;
+        this.out = out;
+    }
+
+    /**
+     * @param json a JSON text
+     * @return the canonical form of the text
+     * @throws JSONException if the text is not valid JSON, has duplicate keys or numbers out of range
+     */
+    static String canonicalize(final String json) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        try {
+            CanonicalJson writer = new CanonicalJson(json, out);
+            writer.writeValue();
+            writer.scanner.expectEnd();
+            return out.toString();
+        } finally {
+            if (out.capacity() > MAX_RETAINED_CAPACITY) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    private void writeValue() {
+        char c = scanner.peek();
+        if (c == '{') {
+            writeObject();
+        } else if (c == '[') {
+            writeArray();
+        } else if (c == '"') {
+            int start = scanner.position();
+            if (scanner.skipString()) {
+                writeString(new JsonScanner(json.substring(start, scanner.position())).readString());
+            } else {
+                // without escapes the string can only contain characters that are written as they are
+                out.append(json, start, scanner.position());
+            }
+        } else {
+            int start = scanner.position();
+            scanner.skipValue();
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                writeNumber(json.substring(start, scanner.position()));
+            } else {
+                out.append(json, start, scanner.position());
+            }
+        }
+    }
+
+    private void writeArray() {
+        enter();
+        scanner.expect('[');
+        out.append('[');
+        if (scanner.peek() == ']') {
+            scanner.expect(']');
+        } else {
+            writeValue();
+            while (scanner.next(',', ']') == ',') {
+                out.append(',');
+                writeValue();
+            }
+        }
+        out.append(']');
+        depth--;
+    }
+
+    private void writeObject() {
+        enter();
+        scanner.expect('{');
+        out.append('{');
+        int objectStart = out.length();
+        List<Member> members = new ArrayList<>();
+        boolean sorted = true;
+
+        if (scanner.peek() == '}') {
+            scanner.expect('}');
+        } else {
+            do {
+                if (scanner.peek() != '"') {
+                    throw scanner.syntaxError("Expected a key");
+                }
+                String key = scanner.readString();
+                scanner.expect(':');
+
+                if (!members.isEmpty()) {
+                    int order = members.get(members.size() - 1).key.compareTo(key);
+                    if (order == 0) {
+                        throw duplicateKey(key);
+                    }
+                    sorted &= order < 0;
+                    out.append(',');
+                }
+                int start = out.length();
+                writeString(key);
+                out.append(':');
+                writeValue();
+                members.add(new Member(key, start - objectStart, out.length() - objectStart));
+            } while (scanner.next(',', '}') == ',');
+        }
+
+        if (!sorted) {
+            reorder(objectStart, members);
+        }
+        out.append('}');
+        depth--;
+    }
+
+    /**
+     * Rewrites the members of an object, written from objectStart on, in the order of their keys.
+     * Keys are compared by their UTF-16 code units, as required by RFC 8785.
+     */
+    private void reorder(final int objectStart, final List<Member> members) {
+        String written = out.substring(objectStart);
+        Collections.sort(members, BY_KEY);
+        out.setLength(objectStart);
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            if (i > 0) {
+                if (members.get(i - 1).key.equals(member.key)) {
+                    throw duplicateKey(member.key);
+                }
+                out.append(',');
+            }
+            out.append(written, member.start, member.end);
+        }
+    }
+
+    private void writeString(final String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private void writeNumber(final String number) {
+        int digits = number.charAt(0) == '-' ? number.length() - 1 : number.length();
+        if (digits <= MAX_EXACT_DIGITS && number.indexOf('.') < 0 && number.indexOf('e') < 0
+                && number.indexOf('E') < 0) {
+            out.append("-0".equals(number) ? "0" : number);
+            return;
+        }
+
+        double value = Double.parseDouble(number);
+        if (Double.isInfinite(value)) {
+            throw new JSONException("Number " + number + " is out of range");
+        }
+        appendNumber(out, value);
+    }
+
+    /**
+     * Appends a finite number like ECMAScript's Number.prototype.toString() does.
+     */
+    static void appendNumber(final StringBuilder out, final double number) {
+        if (number == 0) {
+            out.append('0');
+            return;
+        }
+        if (number < 0) {
+            out.append('-');
+        }
+
+        BigDecimal decimal = shortestDecimal(Math.abs(number));
+        String digits = decimal.unscaledValue().toString();
+        int length = digits.length();
+        // the number is 0.digits * 10^exponent
+        int exponent = length - decimal.scale();
+
+        if (length <= exponent && exponent <= MAX_PLAIN_EXPONENT) {
+            out.append(digits);
+            for (int i = length; i < exponent; i++) {
+                out.append('0');
+            }
+        } else if (0 < exponent && exponent <= MAX_PLAIN_EXPONENT) {
+            out.append(digits, 0, exponent).append('.').append(digits, exponent, length);
+        } else if (MIN_PLAIN_EXPONENT < exponent && exponent <= 0) {
+            out.append("0.");
+            for (int i = exponent; i < 0; i++) {
+                out.append('0');
+            }
+            out.append(digits);
+        } else {
+            out.append(digits.charAt(0));
+            if (length > 1) {
+                out.append('.').append(digits, 1, length);
+            }
+            out.append('e').append(exponent > 0 ? '+' : '-').append(Math.abs(exponent - 1));
+        }
+    }
+
+    /**
+     * @return the decimal with the fewest digits that is read as the number, the closest one if there are several
+     */
+    private static BigDecimal shortestDecimal(final double number) {
+        // Double.toString does not return the shortest digits for all numbers before Java 19
+        BigDecimal exact = new BigDecimal(number);
+        for (int precision = 1; precision < MAX_DOUBLE_DIGITS; precision++) {
+            BigDecimal decimal = exact.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+            if (decimal.doubleValue() == number) {
+                return decimal.stripTrailingZeros();
+            }
+        }
+        return exact.round(new MathContext(MAX_DOUBLE_DIGITS, RoundingMode.HALF_EVEN)).stripTrailingZeros();
+    }
+
+    private void enter() {
+        if (++depth > JsonScanner.MAX_DEPTH) {
+            throw scanner.syntaxError("Nesting too deep");
+        }
+    }
+
+    private static JSONException duplicateKey(final String key) {
+        return new JSONException("Duplicate key \"" + key + "\"");
+    }
+
+    /**
+     * A member of an object, by its position relative to the start of the object's members in the output.
+     */
+    private static final class Member {
+
+        private final String key;
+
+        private final int start;
+
+        private final int end;
+
+        Member(final String key, final int start, final int end) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Settings of the chaincode, read once from the environment of the chaincode process.
+ *
+ * Settings that change the written state must be identical on all endorsing peers,
+ * otherwise the endorsements of a transaction do not match.
+ */
+final class ChaincodeConfig {
+
+    /**
+     * Port of the HTTP endpoint serving the metrics in the Prometheus text format, 0 disables it.
+     */
+    static final String METRICS_PORT = "DID4DCAT_METRICS_PORT";
+
+    /**
+     * Level of the contract's log, e.g. DEBUG or INFO. Defaults to the level of the chaincode,
+     * {@code CORE_CHAINCODE_LOGGING_LEVEL}, and to INFO.
+     */
+    static final String LOG_LEVEL = "DID4DCAT_LOG_LEVEL";
+
+    /**
+     * Number of log records buffered for the background writer, further records are dropped.
+     */
+    static final String LOG_BUFFER_SIZE = "DID4DCAT_LOG_BUFFER_SIZE";
+
+    private static final Logger LOGGER = Logger.getLogger(ContractLogging.LOGGER_NAME);
+
+    private static final int METRICS_PORT_VALUE = intSetting(METRICS_PORT, 0);
+
+    private static final Level LOG_LEVEL_VALUE = levelSetting(LOG_LEVEL, "CORE_CHAINCODE_LOGGING_LEVEL", Level.INFO);
+
+    private static final int LOG_BUFFER_SIZE_VALUE = Math.max(1, intSetting(LOG_BUFFER_SIZE, 8192));
+
+    private ChaincodeConfig() { }
+
+    static int metricsPort() {
+        return METRICS_PORT_VALUE;
+    }
+
+    static Level logLevel() {
+        return LOG_LEVEL_VALUE;
+    }
+
+    static int logBufferSize() {
+        return LOG_BUFFER_SIZE_VALUE;
+    }
+
+    private static int intSetting(final String name, final int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning(String.format("Ignoring invalid value %s of %s", value, name));
+            return defaultValue;
+        }
+    }
+
+    private static Level levelSetting(final String name, final String fallbackName, final Level defaultValue) {
+        for (String each : new String[] {name, fallbackName}) {
+            String value = System.getenv(each);
+            if (value == null || value.trim().isEmpty()) {
+                continue;
+            }
+            Level level = parseLevel(value);
+            if (level != null) {
+                return level;
+            }
+            LOGGER.warning(String.format("Ignoring invalid value %s of %s", value, each));
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Maps JUL level names and the names used by Fabric, e.g. in {@code CORE_CHAINCODE_LOGGING_LEVEL}.
+     *
+     * @param name the name of the level
+     * @return the level, null if the name is unknown
+     */
+    static Level parseLevel(final String name) {
+        switch (name.trim().toUpperCase()) {
+            case "TRACE":
+                return Level.FINEST;
+            case "DEBUG":
+                return Level.FINE;
+            case "WARN":
+                return Level.WARNING;
+            case "ERROR":
+            case "CRITICAL":
+                return Level.SEVERE;
+            default:
+                try {
+                    return Level.parse(name.trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+        }
+    }
+}
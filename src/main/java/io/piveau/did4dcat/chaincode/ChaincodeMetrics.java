@@ -0,0 +1,168 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Aggregated metrics of the transactions handled by this chaincode process, per transaction name.
+ *
+ * The aggregates are rendered in the Prometheus text format. Failed transactions are only counted,
+ * their partial counters and wall time are not added to the aggregates of completed transactions.
+ */
+final class ChaincodeMetrics {
+
+    /**
+     * Upper bounds of the latency histogram buckets in seconds.
+     */
+    private static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10};
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Map<String, Aggregate> transactions = new ConcurrentSkipListMap<>();
+
+    private static final class Aggregate {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder durationNanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length];
+        private final LongAdder stateReads = new LongAdder();
+        private final LongAdder stateWrites = new LongAdder();
+        private final LongAdder rangeQueries = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder recordsScanned = new LongAdder();
+        private final LongAdder recordsReturned = new LongAdder();
+        private final LongAdder serializationNanos = new LongAdder();
+
+        Aggregate() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Adds the counters of a completed transaction.
+     *
+     * @param transaction the name of the transaction
+     * @param metrics the counters of the transaction
+     */
+    void record(final String transaction, final TransactionMetrics metrics) {
+        Aggregate aggregate = transactions.computeIfAbsent(transaction, name -> new Aggregate());
+        long durationNanos = metrics.elapsedNanos();
+
+        aggregate.count.increment();
+        aggregate.durationNanos.add(durationNanos);
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (durationNanos <= LATENCY_BUCKETS[i] * NANOS_PER_SECOND) {
+                aggregate.buckets[i].increment();
+                break;
+            }
+        }
+        aggregate.stateReads.add(metrics.getStateReads());
+        aggregate.stateWrites.add(metrics.getStateWrites());
+        aggregate.rangeQueries.add(metrics.getRangeQueries());
+        aggregate.bytesRead.add(metrics.getBytesRead());
+        aggregate.bytesWritten.add(metrics.getBytesWritten());
+        aggregate.recordsScanned.add(metrics.getRecordsScanned());
+        aggregate.recordsReturned.add(metrics.getRecordsReturned());
+        aggregate.serializationNanos.add(metrics.getSerializationNanos());
+    }
+
+    /**
+     * Counts a transaction that failed with an exception.
+     *
+     * @param transaction the name of the transaction
+     */
+    void recordFailure(final String transaction) {
+        transactions.computeIfAbsent(transaction, name -> new Aggregate()).failures.increment();
+    }
+
+    /**
+     * @param transaction the name of the transaction
+     * @return the number of recorded transactions with that name
+     */
+    long count(final String transaction) {
+        Aggregate aggregate = transactions.get(transaction);
+        return aggregate == null ? 0 : aggregate.count.sum();
+    }
+
+    /**
+     * @param transaction the name of the transaction
+     * @return the number of failed transactions with that name
+     */
+    long failures(final String transaction) {
+        Aggregate aggregate = transactions.get(transaction);
+        return aggregate == null ? 0 : aggregate.failures.sum();
+    }
+
+    /**
+     * @return the aggregates in the Prometheus text exposition format
+     */
+    String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+
+        text.append("# HELP did4dcat_transaction_duration_seconds Wall time of completed transactions.\n")
+                .append("# TYPE did4dcat_transaction_duration_seconds histogram\n");
+        for (Map.Entry<String, Aggregate> entry : transactions.entrySet()) {
+            Aggregate aggregate = entry.getValue();
+            String label = "transaction=\"" + entry.getKey() + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += aggregate.buckets[i].sum();
+                text.append("did4dcat_transaction_duration_seconds_bucket{").append(label)
+                        .append(",le=\"").append(LATENCY_BUCKETS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            long count = aggregate.count.sum();
+            text.append("did4dcat_transaction_duration_seconds_bucket{").append(label)
+                    .append(",le=\"+Inf\"} ").append(count).append('\n')
+                    .append("did4dcat_transaction_duration_seconds_sum{").append(label).append("} ")
+                    .append(aggregate.durationNanos.sum() / NANOS_PER_SECOND).append('\n')
+                    .append("did4dcat_transaction_duration_seconds_count{").append(label).append("} ")
+                    .append(count).append('\n');
+        }
+
+        counter(text, "did4dcat_transaction_failures_total", "Transactions that failed with an exception.",
+                aggregate -> aggregate.failures);
+        counter(text, "did4dcat_state_reads_total", "Single key reads from the world state.",
+                aggregate -> aggregate.stateReads);
+        counter(text, "did4dcat_state_writes_total", "Writes and deletions of world state keys.",
+                aggregate -> aggregate.stateWrites);
+        counter(text, "did4dcat_range_queries_total", "Range and partial composite key queries.",
+                aggregate -> aggregate.rangeQueries);
+        counter(text, "did4dcat_state_read_bytes_total", "Bytes read from the world state.",
+                aggregate -> aggregate.bytesRead);
+        counter(text, "did4dcat_state_written_bytes_total", "Bytes written to the world state.",
+                aggregate -> aggregate.bytesWritten);
+        counter(text, "did4dcat_records_scanned_total", "Records returned by range queries to the chaincode.",
+                aggregate -> aggregate.recordsScanned);
+        counter(text, "did4dcat_records_returned_total", "Records returned to the client.",
+                aggregate -> aggregate.recordsReturned);
+
+        text.append("# HELP did4dcat_serialization_seconds_total Time spent encoding, decoding and rendering records.\n")
+                .append("# TYPE did4dcat_serialization_seconds_total counter\n");
+        for (Map.Entry<String, Aggregate> entry : transactions.entrySet()) {
+            text.append("did4dcat_serialization_seconds_total{transaction=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().serializationNanos.sum() / NANOS_PER_SECOND).append('\n');
+        }
+
+        return text.toString();
+    }
+
+    private void counter(final StringBuilder text, final String name, final String help,
+            final Function<Aggregate, LongAdder> value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Aggregate> entry : transactions.entrySet()) {
+            text.append(name).append("{transaction=\"").append(entry.getKey()).append("\"} ")
+                    .append(value.apply(entry.getValue()).sum()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.StreamHandler;
+
+/**
+ * Logging of the contract, one line per record on stdout, written asynchronously.
+ *
+ * The level and the size of the buffer are taken from {@link ChaincodeConfig}.
+ */
+final class ContractLogging {
+
+    static final String LOGGER_NAME = "io.piveau.did4dcat.chaincode";
+
+    private static final Logger LOGGER = configure();
+
+    private ContractLogging() { }
+
+    static Logger logger() {
+        return LOGGER;
+    }
+
+    private static Logger configure() {
+        Logger logger = Logger.getLogger(LOGGER_NAME);
+
+        StreamHandler stdout = new StreamHandler(System.out, new LineFormatter());
+        stdout.setLevel(Level.ALL);
+        AsyncLogHandler handler = new AsyncLogHandler(stdout, ChaincodeConfig.logBufferSize());
+        Runtime.getRuntime().addShutdownHook(new Thread(handler::close));
+
+        logger.setLevel(ChaincodeConfig.logLevel());
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+        return logger;
+    }
+
+    private static final class LineFormatter extends Formatter {
+
+        @Override
+        public String format(final LogRecord record) {
+            StringBuilder line = new StringBuilder()
+                    .append(Instant.ofEpochMilli(record.getMillis())).append(' ')
+                    .append(record.getLevel().getName()).append(' ')
+                    .append(formatMessage(record)).append(System.lineSeparator());
+            if (record.getThrown() != null) {
+                StringWriter stackTrace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(stackTrace));
+                line.append(stackTrace);
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.json.JSONObject;
+
+/**
+ * Chaincode event announcing the datasets written by a transaction, so off-chain indexers
+ * do not need to poll the ledger.
+ *
+ * Fabric keeps only one event per transaction, so all changes of a transaction are collected
+ * into one event. The payload is a JSON array with one entry per change, the {@link DatasetSummary}
+ * of the written dataset with the operation added:
+ * {@code {"did":..,"owner":{"mspId":..,"userId":..},"modified":..,"hash":..,"operation":..}}.
+ */
+final class DatasetChangeEvent {
+
+    static final String NAME = "DatasetsChanged";
+
+    private final StringBuilder payload = new StringBuilder(256).append('[');
+
+    private int count;
+
+    /**
+     * Adds a written dataset to the event.
+     *
+     * @param summary the JSON of the summary of the dataset, see {@link DatasetSummary#toJson}
+     * @param operation the operation, see {@link DatasetWriteResult}
+     */
+    void add(final String summary, final String operation) {
+        if (count > 0) {
+            payload.append(',');
+        }
+        payload.append(summary, 0, summary.length() - 1)
+                .append(",\"operation\":").append(JSONObject.quote(operation))
+                .append('}');
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Sets the event of the transaction, if any dataset was written.
+     *
+     * @param stub the stub of the transaction
+     */
+    void emit(final ChaincodeStub stub) {
+        if (count > 0) {
+            stub.setEvent(NAME, toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return payload + "]";
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.owlike.genson.Genson;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONObject;
+
+/**
+ * Encodes datasets for the world state.
+ *
+ * Records are written as a magic byte and a format version, followed by the fields in protobuf wire format.
+ * Records with a compressed DID document use {@link #COMPRESSED_VERSION}, so decoders that do not know the
+ * compressed fields reject them instead of skipping the document.
+ * Records written before the binary format was introduced are the Genson JSON of a {@link Dataset},
+ * they are still decoded and get upgraded once they are written again.
+ *
+ * DID documents above {@link #COMPRESSION_THRESHOLD} are stored deflated. Threshold, algorithm, level and
+ * strategy are fixed, so all endorsers produce the same bytes for the same document.
+ */
+final class DatasetCodec {
+
+    static final byte MAGIC = (byte) 0xD4;
+
+    static final byte VERSION = 1;
+
+    static final byte COMPRESSED_VERSION = 2;
+
+    /**
+     * DID documents larger than this number of bytes are stored compressed. Part of the chaincode rather than of the
+     * peer's environment, as endorsements only match if all peers use the same value.
+     */
+    static final int COMPRESSION_THRESHOLD = 4096;
+
+    private static final int HEADER_SIZE = 2;
+
+    private static final int DID = 1;
+
+    private static final int DID_DOCUMENT = 2;
+
+    private static final int USER_ID = 3;
+
+    private static final int MSP_ID = 4;
+
+    private static final int COMPRESSED_DID_DOCUMENT = 5;
+
+    private static final int DID_DOCUMENT_LENGTH = 6;
+
+    private static final int COMPRESSION_LEVEL = Deflater.BEST_COMPRESSION;
+
+    private static final Genson GENSON = new Genson();
+
+    private DatasetCodec() { }
+
+    /**
+     * @param value the stored value
+     * @return true if the value uses the binary format, false for legacy JSON
+     */
+    static boolean isBinary(final byte[] value) {
+        return value.length >= HEADER_SIZE && value[0] == MAGIC;
+    }
+
+    /**
+     * Encodes a dataset in the current binary format, with the {@link #COMPRESSION_THRESHOLD}.
+     *
+     * @param dataset the dataset
+     * @return the value to store
+     */
+    static byte[] encode(final Dataset dataset) {
+        return encode(dataset, COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Encodes a dataset in the current binary format.
+     *
+     * @param dataset the dataset
+     * @param compressionThreshold DID documents larger than this number of bytes are compressed, 0 disables it
+     * @return the value to store
+     */
+    static byte[] encode(final Dataset dataset, final int compressionThreshold) {
+        DatasetOwner owner = dataset.getOwner();
+        String didDocument = dataset.getDidDocument();
+
+        byte[] compressed = null;
+        int documentLength = 0;
+        // A UTF-8 encoded char takes at most three bytes, shorter documents cannot exceed the threshold
+        if (compressionThreshold > 0 && didDocument != null && didDocument.length() > compressionThreshold / 3) {
+            byte[] document = didDocument.getBytes(StandardCharsets.UTF_8);
+            if (document.length > compressionThreshold) {
+                compressed = deflate(document);
+                documentLength = document.length;
+                if (compressed.length >= documentLength) {
+                    compressed = null;
+                }
+            }
+        }
+
+        int size = stringSize(DID, dataset.getDid())
+                + stringSize(USER_ID, owner.getUserId())
+                + stringSize(MSP_ID, owner.getMspId());
+        if (compressed == null) {
+            size += stringSize(DID_DOCUMENT, didDocument);
+        } else {
+            size += CodedOutputStream.computeByteArraySize(COMPRESSED_DID_DOCUMENT, compressed)
+                    + CodedOutputStream.computeUInt32Size(DID_DOCUMENT_LENGTH, documentLength);
+        }
+
+        byte[] value = new byte[HEADER_SIZE + size];
+        value[0] = MAGIC;
+        value[1] = compressed == null ? VERSION : COMPRESSED_VERSION;
+
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(value, HEADER_SIZE, size);
+            writeString(output, DID, dataset.getDid());
+            if (compressed == null) {
+                writeString(output, DID_DOCUMENT, didDocument);
+            } else {
+                output.writeByteArray(COMPRESSED_DID_DOCUMENT, compressed);
+                output.writeUInt32(DID_DOCUMENT_LENGTH, documentLength);
+            }
+            writeString(output, USER_ID, owner.getUserId());
+            writeString(output, MSP_ID, owner.getMspId());
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new ChaincodeException("Could not encode dataset " + dataset.getDid(), e);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes a stored dataset, either binary or legacy JSON.
+     *
+     * @param value the stored value
+     * @return the dataset
+     */
+    static Dataset decode(final byte[] value) {
+        if (!isBinary(value)) {
+            return GENSON.deserialize(new String(value, StandardCharsets.UTF_8), Dataset.class);
+        }
+        if (value[1] != VERSION && value[1] != COMPRESSED_VERSION) {
+            throw new ChaincodeException("Unsupported dataset record version " + value[1]);
+        }
+
+        String did = null;
+        String didDocument = null;
+        String userId = null;
+        String mspId = null;
+        byte[] compressed = null;
+        int documentLength = 0;
+
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(value, HEADER_SIZE, value.length - HEADER_SIZE);
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                switch (WireFormat.getTagFieldNumber(tag)) {
+                    case DID:
+                        did = input.readString();
+                        break;
+                    case DID_DOCUMENT:
+                        didDocument = input.readString();
+                        break;
+                    case USER_ID:
+                        userId = input.readString();
+                        break;
+                    case MSP_ID:
+                        mspId = input.readString();
+                        break;
+                    case COMPRESSED_DID_DOCUMENT:
+                        compressed = input.readByteArray();
+                        break;
+                    case DID_DOCUMENT_LENGTH:
+                        documentLength = input.readUInt32();
+                        break;
+                    default:
+                        input.skipField(tag);
+                }
+            }
+        } catch (IOException e) {
+            throw new ChaincodeException("Could not decode dataset record", e);
+        }
+
+        if (compressed != null) {
+            didDocument = new String(inflate(compressed, documentLength), StandardCharsets.UTF_8);
+        }
+
+        return new Dataset(did, didDocument, new DatasetOwner(userId, mspId));
+    }
+
+    /**
+     * Renders a stored dataset as the JSON returned by the queries.
+     * Legacy records already are that JSON and are returned unchanged. Absent fields are written as
+     * {@code null}, as Genson wrote them into legacy records.
+     *
+     * @param value the stored value
+     * @return the JSON of the dataset
+     */
+    static String toJson(final byte[] value) {
+        if (!isBinary(value)) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        Dataset dataset = decode(value);
+        DatasetOwner owner = dataset.getOwner();
+        StringBuilder json = new StringBuilder(value.length + 128);
+        json.append("{\"did\":").append(quote(dataset.getDid()))
+                .append(",\"didDocument\":").append(quote(dataset.getDidDocument()))
+                .append(",\"owner\":{\"mspId\":").append(quote(owner.getMspId()))
+                .append(",\"userId\":").append(quote(owner.getUserId()))
+                .append("}}");
+        return json.toString();
+    }
+
+    /**
+     * @param value the stored value
+     * @return the size of the compressed DID document in the record, -1 if it is not compressed
+     */
+    static int compressedDocumentSize(final byte[] value) {
+        if (!isBinary(value)) {
+            return -1;
+        }
+        try {
+            CodedInputStream input = CodedInputStream.newInstance(value, HEADER_SIZE, value.length - HEADER_SIZE);
+            for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+                if (WireFormat.getTagFieldNumber(tag) == COMPRESSED_DID_DOCUMENT) {
+                    return input.readRawVarint32();
+                }
+                input.skipField(tag);
+            }
+        } catch (IOException e) {
+            throw new ChaincodeException("Could not decode dataset record", e);
+        }
+        return -1;
+    }
+
+    private static byte[] deflate(final byte[] document) {
+        Deflater deflater = new Deflater(COMPRESSION_LEVEL, true);
+        try {
+            deflater.setStrategy(Deflater.DEFAULT_STRATEGY);
+            deflater.setInput(document);
+            deflater.finish();
+            byte[] buffer = new byte[document.length + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] compressed, final int documentLength) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] document = new byte[documentLength];
+            int length = 0;
+            while (length < documentLength && !inflater.finished()) {
+                int inflated = inflater.inflate(document, length, documentLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != documentLength) {
+                throw new ChaincodeException("Compressed DID document is truncated");
+            }
+            return document;
+        } catch (DataFormatException e) {
+            throw new ChaincodeException("Could not decompress DID document", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String quote(final String value) {
+        return value == null ? "null" : JSONObject.quote(value);
+    }
+
+    private static int stringSize(final int field, final String value) {
+        return value == null ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static void writeString(final CodedOutputStream output, final int field, final String value)
+            throws IOException {
+        if (value != null) {
+            output.writeString(field, value);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * Transaction context of the DID4DCAT contract, holding the state cache of the transaction.
+ */
+final class DatasetContext extends Context {
+
+    private final TransactionState state;
+
+    DatasetContext(final ChaincodeStub stub) {
+        super(stub);
+        this.state = new TransactionState(stub);
+    }
+
+    TransactionState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the state of the transaction. Contexts not created by the contract, e.g. in tests,
+     * get a new state, so it has to be retrieved once per transaction.
+     *
+     * @param ctx the transaction context
+     * @return the state of the transaction
+     */
+    static TransactionState stateOf(final Context ctx) {
+        if (ctx instanceof DatasetContext) {
+            return ((DatasetContext) ctx).getState();
+        }
+        return new TransactionState(ctx.getStub());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.Collection;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collects stored dataset records into a JSON response.
+ *
+ * Record JSON is appended as it is instead of collecting {@link Dataset} objects and serializing them
+ * again, legacy JSON records are passed through unchanged, see {@link DatasetCodec#toJson(byte[])}.
+ */
+final class DatasetJsonWriter {
+
+    private final StringBuilder buffer = new StringBuilder(1024);
+
+    private int count;
+
+    private DatasetJsonWriter(final String opening) {
+        buffer.append(opening);
+    }
+
+    /**
+     * @return a writer producing a JSON array of records
+     */
+    static DatasetJsonWriter array() {
+        return new DatasetJsonWriter("[");
+    }
+
+    /**
+     * @return a writer producing an object with a records array
+     */
+    static DatasetJsonWriter records() {
+        return new DatasetJsonWriter("{\"records\":[");
+    }
+
+    /**
+     * Appends the JSON of a record.
+     *
+     * @param record the JSON of the record
+     */
+    void append(final String record) {
+        if (count > 0) {
+            buffer.append(',');
+        }
+        buffer.append(record);
+        count++;
+    }
+
+    /**
+     * @return the number of appended records
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the number of characters written so far
+     */
+    int length() {
+        return buffer.length();
+    }
+
+    /**
+     * Closes a writer created by {@link #array()}.
+     *
+     * @return the JSON array of all appended records
+     */
+    String finishArray() {
+        return buffer.append(']').toString();
+    }
+
+    /**
+     * Closes a writer created by {@link #records()} as a page.
+     *
+     * @param bookmark the bookmark of the next page
+     * @param fetchedCount the number of fetched records
+     * @return the JSON page of all appended records
+     */
+    String finishPage(final String bookmark, final int fetchedCount) {
+        return buffer.append("],\"bookmark\":").append(JSONObject.quote(bookmark))
+                .append(",\"fetchedCount\":").append(fetchedCount)
+                .append('}').toString();
+    }
+
+    /**
+     * Closes a writer created by {@link #records()} as a page of a feed.
+     *
+     * @param cursor the cursor after the last record
+     * @return the JSON page of all appended records
+     */
+    String finishCursor(final String cursor) {
+        return buffer.append("],\"cursor\":").append(JSONObject.quote(cursor))
+                .append(",\"fetchedCount\":").append(count)
+                .append('}').toString();
+    }
+
+    /**
+     * Closes a writer created by {@link #records()} as the result of a lookup.
+     *
+     * @param missing the keys that were not found
+     * @return the JSON object of all appended records and the missing keys
+     */
+    String finishLookup(final Collection<String> missing) {
+        return buffer.append("],\"missing\":").append(new JSONArray(missing).toString())
+                .append('}').toString();
+    }
+}
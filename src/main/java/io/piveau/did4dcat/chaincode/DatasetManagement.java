@@ -4,9 +4,20 @@
 
 package io.piveau.did4dcat.chaincode;
 
-import java.security.Principal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.contract.Context;
@@ -17,12 +28,18 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 import com.owlike.genson.Genson;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @Contract(
@@ -41,12 +58,131 @@ import org.json.JSONObject;
 @Default
 public final class DatasetManagement implements ContractInterface {
 
+    /**
+     * Prefix of the keys of the dataset records, followed by the DID. Dataset records are simple keys so they can be
+     * scanned in ranges by all transactions, auxiliary data uses composite keys, which are never part of these ranges.
+     */
+    static final String DATASET_PREFIX = "dataset:";
+
+    /**
+     * Prefix of the keys of dataset records written before {@link #DATASET_PREFIX}, which were stored under their DID.
+     */
+    static final String LEGACY_PREFIX = "did:";
+
+    /**
+     * Object type of the composite key index mapping an owner to its datasets.
+     */
+    static final String OWNER_INDEX = "owner~mspId~userId~did";
+
+    /**
+     * Object type of the composite key index mapping a controller to the datasets of its DID documents.
+     */
+    static final String CONTROLLER_INDEX = "controller~did";
+
+    /**
+     * Object type of the composite keys of the change feed, ordered by the transaction timestamp.
+     */
+    static final String CHANGE_INDEX = "change~timestamp~txId~did";
+
+    /**
+     * Age a change must have, relative to the timestamp of the query, before the change feed returns it.
+     * Transactions can be committed after ones with later timestamps, the delay keeps cursors from passing them.
+     */
+    static final Duration CHANGE_FEED_DELAY = Duration.ofMinutes(5);
+
+    /**
+     * Index entries carry no data, but an empty value would delete the key.
+     */
+    static final String INDEX_VALUE = "\u0000";
+
+    /**
+     * Fabric CA attribute and value of the certificates of administrators, who may run the maintenance
+     * transactions rewriting existing records.
+     */
+    static final String ADMIN_ATTRIBUTE = "hf.Type";
+
+    static final String ADMIN_ATTRIBUTE_VALUE = "admin";
+
+    /**
+     * Upper bound for the page size of paginated queries.
+     */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Number of client certificates whose owner is kept in memory.
+     */
+    static final int OWNER_CACHE_CAPACITY = 256;
+
+    /**
+     * Length in characters after which a history page ends before reaching its page size,
+     * so the history of frequently updated datasets with large documents stays within message limits.
+     */
+    static final int MAX_HISTORY_PAGE_LENGTH = 4 * 1024 * 1024;
+
+    /**
+     * Number of history entries a history bookmark may be behind the newest entry. The peer returns the history
+     * from the newest entry on, so every page reads all entries before its bookmark again.
+     */
+    static final int MAX_HISTORY_DEPTH = 10_000;
+
+    private static final String DATASET_END = rangeEnd(DATASET_PREFIX);
+
+    private static final String LEGACY_END = rangeEnd(LEGACY_PREFIX);
+
+    /**
+     * Prefixes of all dataset records, the migrated ones first.
+     */
+    private static final List<String> RECORD_PREFIXES = Arrays.asList(DATASET_PREFIX, LEGACY_PREFIX);
+
+    private static final Logger LOGGER = ContractLogging.logger();
+
+    private static final DatasetOwnerCache OWNERS = new DatasetOwnerCache(OWNER_CACHE_CAPACITY);
+
+    private static final ChaincodeMetrics METRICS = new ChaincodeMetrics();
+
+    /**
+     * Context of the transaction running on the current thread. The contract API calls no hook for failed
+     * transactions, so the context stays set when a transaction fails and is cleared by {@code afterTransaction}.
+     */
+    private static final ThreadLocal<Context> CURRENT_TRANSACTION = new ThreadLocal<>();
+
+    static {
+        MetricsServer.start(ChaincodeConfig.metricsPort(), METRICS);
+    }
+
     private final Genson genson = new Genson();
 
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new DatasetContext(stub);
+    }
+
+    /**
+     * Transactions the contract rejects are counted as failed when the error is raised. Any other transaction
+     * left without {@code afterTransaction} failed with an unexpected exception and is counted when the next
+     * transaction starts on the same thread.
+     */
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        recordFailure();
+        CURRENT_TRANSACTION.set(ctx);
+        DatasetContext.stateOf(ctx).getMetrics().start();
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        CURRENT_TRANSACTION.remove();
+        TransactionMetrics metrics = DatasetContext.stateOf(ctx).getMetrics();
+        if (metrics.isStarted()) {
+            METRICS.record(transactionName(ctx.getStub()), metrics);
+        }
+    }
+
     private enum DatasetManagementError {
         DATASET_NOT_FOUND,
         DATASET_ALREADY_EXISTS,
-        USER_NOT_AUTHORIZED
+        USER_NOT_AUTHORIZED,
+        INVALID_ARGUMENT
     }
 
     /**
@@ -61,7 +197,7 @@ public final class DatasetManagement implements ContractInterface {
 
 
     /**
-     * Creates a new dataset on the ledger.
+     * Creates a new dataset on the ledger. The DID document is stored in its canonical form, see {@link CanonicalJson}.
      *
      * @param ctx the transaction context
      * @param didDocument the DID document
@@ -69,31 +205,33 @@ public final class DatasetManagement implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Dataset CreateDataset(final Context ctx, final String didDocument) {
-        JSONObject didDocumentJson = new JSONObject(didDocument);
-        String did = didDocumentJson.getString("id");
+        DidDocumentFields fields = DidDocumentFields.scan(CanonicalJson.canonicalize(didDocument));
+        String did = fields.getString(DidDocumentFields.ID);
 
-        ChaincodeStub stub = ctx.getStub();
-        String datasetJSON = stub.getStringState(did);
-
-        if (!(datasetJSON == null || datasetJSON.isEmpty())) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        if (!isEmpty(state.getDatasetRecord(did))) {
             String errorMessage = String.format("Dataset %s already exist", did);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, DatasetManagementError.DATASET_ALREADY_EXISTS.toString());
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.DATASET_ALREADY_EXISTS);
         }
 
         ClientIdentity clientIdentity = ctx.getClientIdentity();
         DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
 
-        Dataset dataset = new Dataset(did, didDocument, owner);
+        Dataset dataset = new Dataset(did, fields.getDocument(), owner);
 
-        //Use Genson to convert the Asset into string, sort it alphabetically and serialize it into a json string
-        String sortedJson = genson.serialize(dataset);
-        stub.putStringState(dataset.getDid(), sortedJson);
+        state.putDataset(dataset);
+        String summary = putIndexes(state, dataset, fields, null);
+        putChange(state, did, DatasetWriteResult.CREATED);
+        DatasetStatistics.putDelta(state, owner.getMspId(), 1);
+        putDigestChange(state, null, dataset);
+        emitChange(state, summary, DatasetWriteResult.CREATED);
         return dataset;
     }
 
     /**
-     * Updates an existing dataset on the ledger.
+     * Updates an existing dataset on the ledger. The DID document is stored in its canonical form,
+     * nothing is written if it has not changed.
      *
      * @param ctx the transaction context
      * @param didDocument the DID document
@@ -101,43 +239,218 @@ public final class DatasetManagement implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Dataset UpdateDataset(final Context ctx, final String didDocument) {
-        JSONObject didDocumentJson = new JSONObject(didDocument);
-        String did = didDocumentJson.getString("id");
+        DidDocumentFields fields = DidDocumentFields.scan(CanonicalJson.canonicalize(didDocument));
+        String did = fields.getString(DidDocumentFields.ID);
 
-        ChaincodeStub stub = ctx.getStub();
-        String datasetJSON = stub.getStringState(did);
+        TransactionState state = DatasetContext.stateOf(ctx);
+        Dataset oldDataset = state.getDataset(did);
 
-        if (datasetJSON == null || datasetJSON.isEmpty()) {
+        if (oldDataset == null) {
             String errorMessage = String.format("Dataset %s does not exist", did);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, DatasetManagementError.DATASET_NOT_FOUND.toString());
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.DATASET_NOT_FOUND);
+        }
+
+        ClientIdentity clientIdentity = ctx.getClientIdentity();
+        DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
+
+        if (!oldDataset.getOwner().equals(owner)) {
+            String errorMessage = "User is not authorized";
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.USER_NOT_AUTHORIZED);
         }
 
-        Dataset oldDataset = genson.deserialize(datasetJSON, Dataset.class);
+        DidDocumentFields oldFields = DidDocumentFields.scan(oldDataset.getDidDocument());
+        fields = preserveIssued(oldFields, fields);
+
+        if (isUnchanged(oldFields, fields.getDocument(), fields)) {
+            LOGGER.log(Level.FINE, "Dataset {0} is unchanged", did);
+            return oldDataset;
+        }
+
+        Dataset dataset = new Dataset(did, fields.getDocument(), owner);
+
+        state.putDataset(dataset);
+        String summary = putIndexes(state, dataset, fields, oldFields);
+        putChange(state, did, DatasetWriteResult.UPDATED);
+        putDigestChange(state, oldDataset, dataset);
+        emitChange(state, summary, DatasetWriteResult.UPDATED);
+        return dataset;
+    }
+
+    /**
+     * Updates an existing dataset on the ledger by applying a JSON Patch (RFC 6902) to its DID document.
+     * The fields id and issued cannot be changed by the patch, and nothing is written if the patch changes nothing.
+     *
+     * @param ctx the transaction context
+     * @param did the DID of the dataset
+     * @param patchJson JSON array of patch operations
+     * @return the updated dataset
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public Dataset PatchDataset(final Context ctx, final String did, final String patchJson) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        Dataset oldDataset = state.getDataset(did);
+
+        if (oldDataset == null) {
+            String errorMessage = String.format("Dataset %s does not exist", did);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.DATASET_NOT_FOUND);
+        }
 
         ClientIdentity clientIdentity = ctx.getClientIdentity();
         DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
 
         if (!oldDataset.getOwner().equals(owner)) {
             String errorMessage = "User is not authorized";
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, DatasetManagementError.USER_NOT_AUTHORIZED.toString());
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.USER_NOT_AUTHORIZED);
         }
 
-        JSONObject oldDidDoc = new JSONObject(oldDataset.getDidDocument());
-        String issued = oldDidDoc.getString("issued");
+        JSONObject oldDocument = new JSONObject(oldDataset.getDidDocument());
+        Object patched;
+        try {
+            patched = JsonPatch.apply(oldDocument, new JSONArray(patchJson));
+        } catch (JSONException e) {
+            String errorMessage = String.format("Invalid patch for dataset %s: %s", did, e.getMessage());
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
 
-        JSONObject didDoc =  new JSONObject(didDocument);
-        didDoc.put("issued", issued);
+        if (!(patched instanceof JSONObject)
+                || !JsonPatch.equal(oldDocument.opt(DidDocumentFields.ID),
+                        ((JSONObject) patched).opt(DidDocumentFields.ID))
+                || !JsonPatch.equal(oldDocument.opt(DidDocumentFields.ISSUED),
+                        ((JSONObject) patched).opt(DidDocumentFields.ISSUED))) {
+            String errorMessage = String.format("Patch for dataset %s must not change its id or issued date", did);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
 
-        Dataset dataset = new Dataset(did, didDoc.toString(), owner);
+        if (oldDocument.similar(patched)) {
+            LOGGER.log(Level.FINE, "Dataset {0} is unchanged", did);
+            return oldDataset;
+        }
 
-        //Use Genson to convert the Asset into string, sort it alphabetically and serialize it into a json string
-        String sortedJson = genson.serialize(dataset);
-        stub.putStringState(dataset.getDid(), sortedJson);
+        DidDocumentFields fields = DidDocumentFields.scan(CanonicalJson.canonicalize(patched.toString()));
+        Dataset dataset = new Dataset(did, fields.getDocument(), owner);
+
+        state.putDataset(dataset);
+        String summary = putIndexes(state, dataset, fields, DidDocumentFields.scan(oldDataset.getDidDocument()));
+        putChange(state, did, DatasetWriteResult.UPDATED);
+        putDigestChange(state, oldDataset, dataset);
+        emitChange(state, summary, DatasetWriteResult.UPDATED);
         return dataset;
     }
 
+    /**
+     * Creates several datasets on the ledger within one transaction.
+     * Documents that cannot be created are rejected individually, without failing the transaction.
+     *
+     * @param ctx the transaction context
+     * @param didDocuments JSON array of DID documents
+     * @return JSON array with the result for each document
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CreateDatasets(final Context ctx, final String didDocuments) {
+        return writeDatasets(ctx, didDocuments, false);
+    }
+
+    /**
+     * Creates or updates several datasets on the ledger within one transaction.
+     * Existing datasets are updated with the same rules as {@link #UpdateDataset(Context, String)}.
+     *
+     * @param ctx the transaction context
+     * @param didDocuments JSON array of DID documents
+     * @return JSON array with the result for each document
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String UpsertDatasets(final Context ctx, final String didDocuments) {
+        return writeDatasets(ctx, didDocuments, true);
+    }
+
+    /**
+     * Writes the index entries and summaries for datasets created before they were introduced.
+     * Processes at most batchSize datasets, starting at startKey, so large ledgers can be
+     * backfilled in several transactions. Only covers records moved by {@link #MigrateDatasetKeys}.
+     * Must be invoked by an administrator, see {@link #ADMIN_ATTRIBUTE}.
+     *
+     * @param ctx the transaction context
+     * @param startKey the key to start with, empty for the first batch
+     * @param batchSize the maximum number of datasets to process
+     * @return the number of processed datasets and the start key of the next batch, empty when done
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String BackfillIndexes(final Context ctx, final String startKey, final int batchSize) {
+        checkAdministrator(ctx);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        int processed = 0;
+        String nextStartKey = "";
+
+        QueryResultsIterator<KeyValue> results =
+                state.getStateByRange(rangeStart(startKey, DATASET_PREFIX), DATASET_END);
+
+        if (results != null) {
+            for (KeyValue result: results) {
+                if (processed == batchSize) {
+                    nextStartKey = result.getKey();
+                    break;
+                }
+                Dataset dataset = state.decode(result.getValue());
+                putIndexes(state, dataset, DidDocumentFields.scan(dataset.getDidDocument()), null);
+                processed++;
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("processed", processed);
+        response.put("nextStartKey", nextStartKey);
+        return genson.serialize(response);
+    }
+
+    /**
+     * Moves dataset records written before {@link #DATASET_PREFIX} was introduced from their DID to the dataset key.
+     * Processes at most batchSize records, starting at startKey, so large ledgers can be migrated in several
+     * transactions. Records that are updated before they are migrated are moved by the update.
+     * Only records under keys starting with {@link #LEGACY_PREFIX} are migrated. Records of datasets whose id is
+     * not a DID are neither migrated nor listed, they are only moved when they are updated. Must be invoked by an
+     * administrator, see {@link #ADMIN_ATTRIBUTE}.
+     *
+     * @param ctx the transaction context
+     * @param startKey the key to start with, empty for the first batch
+     * @param batchSize the maximum number of records to move
+     * @return the number of moved records and the start key of the next batch, empty when done
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String MigrateDatasetKeys(final Context ctx, final String startKey, final int batchSize) {
+        checkAdministrator(ctx);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        int migrated = 0;
+        String nextStartKey = "";
+
+        QueryResultsIterator<KeyValue> results =
+                state.getStateByRange(rangeStart(startKey, LEGACY_PREFIX), LEGACY_END);
+
+        if (results != null) {
+            for (KeyValue result: results) {
+                if (migrated == batchSize) {
+                    nextStartKey = result.getKey();
+                    break;
+                }
+                state.putState(datasetKey(result.getKey()), result.getValue());
+                state.delState(result.getKey());
+                migrated++;
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("migrated", migrated);
+        response.put("nextStartKey", nextStartKey);
+        return genson.serialize(response);
+    }
+
     /**
      * Retrieves a dataset with the specified ID from the ledger.
      *
@@ -147,19 +460,67 @@ public final class DatasetManagement implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Dataset ReadDataset(final Context ctx, final String did) {
-        ChaincodeStub stub = ctx.getStub();
-        String datasetJSON = stub.getStringState(did);
+        TransactionState state = DatasetContext.stateOf(ctx);
+        Dataset dataset = state.getDataset(did);
 
-        if (datasetJSON == null || datasetJSON.isEmpty()) {
+        if (dataset == null) {
             String errorMessage = String.format("Dataset %s does not exist", did);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, DatasetManagementError.DATASET_NOT_FOUND.toString());
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.DATASET_NOT_FOUND);
         }
 
-        Dataset dataset = genson.deserialize(datasetJSON, Dataset.class);
+        state.getMetrics().recordsReturned(1);
         return dataset;
     }
 
+    /**
+     * Retrieves several datasets from the ledger.
+     * Unknown DIDs are reported as missing instead of failing the whole lookup.
+     *
+     * @param ctx the transaction context
+     * @param dids JSON array of DIDs
+     * @return the datasets found on the ledger and the missing DIDs
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String ReadDatasets(final Context ctx, final String dids) {
+        Set<String> requested = new LinkedHashSet<>();
+        try {
+            JSONArray didArray = new JSONArray(dids);
+            for (int i = 0; i < didArray.length(); i++) {
+                requested.add(didArray.getString(i));
+            }
+        } catch (JSONException e) {
+            String errorMessage = "DIDs must be a JSON array of strings";
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+
+        if (requested.size() > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("At most %d datasets can be read at once", MAX_PAGE_SIZE);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter records = DatasetJsonWriter.records();
+        List<String> missing = new ArrayList<>();
+
+        // The shim serves the state requests of a transaction one after another,
+        // the saving comes from resolving all DIDs within a single invocation
+        for (String did : requested) {
+            byte[] datasetRecord = state.getDatasetRecord(did);
+            if (isEmpty(datasetRecord)) {
+                missing.add(did);
+            } else {
+                records.append(state.toJson(datasetRecord));
+            }
+        }
+
+        state.getMetrics().recordsReturned(records.size());
+        return records.finishLookup(missing);
+    }
+
     /**
      * Retrieves all datasets of a user from the ledger.
      *
@@ -168,28 +529,30 @@ public final class DatasetManagement implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String GetMyDatasets(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-
-        List<Dataset> queryResults = new ArrayList<Dataset>();
+        TransactionState state = DatasetContext.stateOf(ctx);
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        DatasetJsonWriter queryResults = DatasetJsonWriter.array();
 
         ClientIdentity clientIdentity = ctx.getClientIdentity();
         DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
 
+        QueryResultsIterator<KeyValue> results =
+                state.getStateByPartialCompositeKey(OWNER_INDEX, owner.getMspId(), owner.getUserId());
+
         if (results != null) {
             for (KeyValue result: results) {
-                Dataset dataset = genson.deserialize(result.getStringValue(), Dataset.class);
-                if (dataset.getOwner().equals(owner)) {
-                    System.out.println(dataset);
-                    queryResults.add(dataset);
+                String did = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(2);
+                byte[] datasetRecord = state.getDatasetRecord(did);
+                if (isEmpty(datasetRecord)) {
+                    continue;
                 }
+                LOGGER.log(Level.FINE, "Returning dataset {0}", did);
+                queryResults.append(state.toJson(datasetRecord));
             }
         }
 
-        final String response = genson.serialize(queryResults);
-
-        return response;
+        state.getMetrics().recordsReturned(queryResults.size());
+        return queryResults.finishArray();
     }
 
     /**
@@ -200,38 +563,864 @@ public final class DatasetManagement implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String GetAllDatasets(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
+        TransactionState state = DatasetContext.stateOf(ctx);
 
-        List<Dataset> queryResults = new ArrayList<Dataset>();
+        DatasetJsonWriter queryResults = DatasetJsonWriter.array();
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        for (String prefix : RECORD_PREFIXES) {
+            QueryResultsIterator<KeyValue> results = state.getStateByRange(prefix, rangeEnd(prefix));
+
+            if (results != null) {
+                for (KeyValue result: results) {
+                    LOGGER.log(Level.FINE, "Returning dataset {0}", result.getKey());
+                    queryResults.append(state.toJson(result.getValue()));
+                }
+            }
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return queryResults.finishArray();
+    }
+
+    /**
+     * Retrieves one page of the datasets of a user from the ledger.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of datasets to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @return the datasets of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetMyDatasetsWithPagination(final Context ctx, final int pageSize, final String bookmark) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter queryResults = DatasetJsonWriter.records();
+
+        ClientIdentity clientIdentity = ctx.getClientIdentity();
+        DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = state.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(OWNER_INDEX, owner.getMspId(), owner.getUserId()), pageSize, bookmark);
+
+        for (KeyValue result: results) {
+            String did = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(2);
+            byte[] datasetRecord = state.getDatasetRecord(did);
+            if (isEmpty(datasetRecord)) {
+                continue;
+            }
+            queryResults.append(state.toJson(datasetRecord));
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return finishPage(queryResults, results.getMetadata());
+    }
+
+    /**
+     * Retrieves one page of the summaries of all datasets, without their DID documents.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of summaries to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @return the summaries of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAllDatasetSummaries(final Context ctx, final int pageSize, final String bookmark) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter queryResults = DatasetJsonWriter.records();
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = state.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(DatasetSummary.SUMMARY), pageSize, bookmark);
+
+        for (KeyValue result: results) {
+            queryResults.append(result.getStringValue());
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return finishPage(queryResults, results.getMetadata());
+    }
+
+    /**
+     * Retrieves one page of the summaries of the datasets of a user, without their DID documents.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of summaries to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @return the summaries of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetMyDatasetSummaries(final Context ctx, final int pageSize, final String bookmark) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter queryResults = DatasetJsonWriter.records();
+
+        ClientIdentity clientIdentity = ctx.getClientIdentity();
+        DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = state.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(OWNER_INDEX, owner.getMspId(), owner.getUserId()), pageSize, bookmark);
+
+        for (KeyValue result: results) {
+            String did = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(2);
+            byte[] summary = state.getState(DatasetSummary.key(did));
+            if (isEmpty(summary)) {
+                continue;
+            }
+            queryResults.append(new String(summary, StandardCharsets.UTF_8));
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return finishPage(queryResults, results.getMetadata());
+    }
+
+    /**
+     * Retrieves one page of the datasets whose DID document has the given controller.
+     *
+     * @param ctx the transaction context
+     * @param controller the DID of the controller
+     * @param pageSize the maximum number of datasets to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @return the datasets of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetDatasetsByController(final Context ctx, final String controller, final int pageSize,
+            final String bookmark) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter queryResults = DatasetJsonWriter.records();
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = state.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(CONTROLLER_INDEX, controller), pageSize, bookmark);
+
+        for (KeyValue result: results) {
+            String did = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(1);
+            byte[] datasetRecord = state.getDatasetRecord(did);
+            if (isEmpty(datasetRecord)) {
+                continue;
+            }
+            queryResults.append(state.toJson(datasetRecord));
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return finishPage(queryResults, results.getMetadata());
+    }
+
+    /**
+     * Retrieves one page of all datasets from the ledger. Records not yet moved by {@link #MigrateDatasetKeys}
+     * follow the migrated ones, the bookmarks of their pages start with {@link #LEGACY_PREFIX}.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the maximum number of datasets to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @return the datasets of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAllDatasetsWithPagination(final Context ctx, final int pageSize, final String bookmark) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter queryResults = DatasetJsonWriter.records();
+        boolean legacy = bookmark != null && bookmark.startsWith(LEGACY_PREFIX);
+
+        if (!legacy) {
+            QueryResultsIteratorWithMetadata<KeyValue> results =
+                    state.getStateByRangeWithPagination(DATASET_PREFIX, DATASET_END, pageSize, bookmark);
 
-        if (results != null) {
             for (KeyValue result: results) {
-                Dataset dataset = genson.deserialize(result.getStringValue(), Dataset.class);
-                System.out.println(dataset);
-                queryResults.add(dataset);
+                queryResults.append(state.toJson(result.getValue()));
+            }
+
+            QueryResponseMetadata metadata = results.getMetadata();
+            if (queryResults.size() == pageSize && !metadata.getBookmark().isEmpty()) {
+                state.getMetrics().recordsReturned(queryResults.size());
+                return finishPage(queryResults, metadata);
             }
         }
 
-        final String response = genson.serialize(queryResults);
+        int remaining = pageSize - queryResults.size();
+        String nextBookmark = LEGACY_PREFIX;
 
-        return response;
+        if (remaining > 0) {
+            QueryResultsIteratorWithMetadata<KeyValue> results =
+                    state.getStateByRangeWithPagination(LEGACY_PREFIX, LEGACY_END, remaining, legacy ? bookmark : "");
+
+            for (KeyValue result: results) {
+                queryResults.append(state.toJson(result.getValue()));
+            }
+
+            nextBookmark = results.getMetadata().getBookmark();
+        }
+
+        state.getMetrics().recordsReturned(queryResults.size());
+        return queryResults.finishPage(nextBookmark, queryResults.size());
     }
 
-    static DatasetOwner convertClientIdentityToOwner(final ClientIdentity clientIdentity) {
-        Principal subjectDN = clientIdentity.getX509Certificate().getSubjectDN();
-        String commonName = null;
+    /**
+     * Retrieves one page of the history of a dataset, the newest changes first as returned by the peer.
+     * A page ends early if it reaches {@link #MAX_HISTORY_PAGE_LENGTH}, but contains at least one entry.
+     * The history of the dataset key is followed by the one of the DID the record was stored under before
+     * it was migrated, without the delete that moved it.
+     *
+     * The peer cannot start the history at a bookmark, so every page skips the entries before it and the cost
+     * of a page grows with its position. Bookmarks more than {@link #MAX_HISTORY_DEPTH} entries deep are
+     * rejected. Skipped entries are neither decoded nor counted as scanned.
+     *
+     * @param ctx the transaction context
+     * @param did the DID of the dataset
+     * @param pageSize the maximum number of history entries to return
+     * @param bookmark the bookmark of the previous page, empty for the first page
+     * @param metadataOnly whether to leave out the datasets and only return transaction IDs, timestamps and deletes
+     * @return the history entries of the page, the bookmark of the next page and the fetched count
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetDatasetHistory(final Context ctx, final String did, final int pageSize, final String bookmark,
+            final boolean metadataOnly) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        DatasetJsonWriter entries = DatasetJsonWriter.records();
+        String nextBookmark = "";
+        boolean started = bookmark == null || bookmark.isEmpty();
+        int skipped = 0;
+
+        for (String key : Arrays.asList(datasetKey(did), did)) {
+            if (!nextBookmark.isEmpty()) {
+                break;
+            }
+            boolean legacy = key.equals(did);
+            QueryResultsIterator<KeyModification> history = state.getHistoryForKey(key);
+            if (history == null) {
+                continue;
+            }
+            try {
+                for (KeyModification modification : history) {
+                    // the old key is only deleted when the record is moved to the dataset key
+                    if (legacy && modification.isDeleted()) {
+                        continue;
+                    }
+                    if (!started) {
+                        started = modification.getTxId().equals(bookmark);
+                        if (!started) {
+                            if (++skipped == MAX_HISTORY_DEPTH) {
+                                throw historyTooDeep(did, bookmark);
+                            }
+                            continue;
+                        }
+                    }
+                    if (entries.size() == pageSize
+                            || entries.size() > 0 && entries.length() >= MAX_HISTORY_PAGE_LENGTH) {
+                        nextBookmark = modification.getTxId();
+                        break;
+                    }
+                    state.getMetrics().recordScanned(modification.getValue());
+                    entries.append(historyEntry(state, modification, metadataOnly));
+                }
+            } finally {
+                close(history);
+            }
+        }
+
+        if (!started) {
+            String errorMessage = String.format("Bookmark %s is not part of the history of dataset %s", bookmark, did);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+
+        state.getMetrics().recordsReturned(entries.size());
+        return entries.finishPage(nextBookmark, entries.size());
+    }
+
+    /**
+     * Retrieves the changes of datasets after a cursor, in the order of their transaction timestamps.
+     * Every created or updated dataset has a change entry, so clients can sync by repeatedly passing the
+     * returned cursor instead of reading all datasets.
+     *
+     * Transaction timestamps are set by the submitting clients, so a change can be committed after a change
+     * with a later timestamp. Changes are therefore only returned once their timestamp is {@link #CHANGE_FEED_DELAY}
+     * older than the one of the query; a change committed within that time after its timestamp is never passed
+     * by a cursor. Clients that cannot rule out longer delays, e.g. because of skewed clocks, re-read from a cursor
+     * of an earlier call and ignore the changes they already know by their txId.
+     *
+     * @param ctx the transaction context
+     * @param cursor the cursor returned by the previous call, empty to start with the first change
+     * @param pageSize the maximum number of changes to return
+     * @return the changes, the cursor after the last returned change and the number of changes
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetChangesSince(final Context ctx, final String cursor, final int pageSize) {
+        checkPageSize(pageSize);
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        String lastKey = cursorKey(cursor);
+        DatasetJsonWriter changes = DatasetJsonWriter.records();
+        Instant settled = state.getStub().getTxTimestamp().minus(CHANGE_FEED_DELAY);
+        long settledNanos = settled.getEpochSecond() * 1_000_000_000L + settled.getNano();
+
+        // the bookmark is inclusive, so the change of the cursor is fetched again and skipped
+        QueryResultsIteratorWithMetadata<KeyValue> results = state.getStateByPartialCompositeKeyWithPagination(
+                new CompositeKey(CHANGE_INDEX), lastKey.isEmpty() ? pageSize : pageSize + 1, lastKey);
+
+        for (KeyValue result: results) {
+            if (result.getKey().equals(lastKey)) {
+                continue;
+            }
+            if (changes.size() == pageSize) {
+                break;
+            }
+            List<String> attributes = CompositeKey.parseCompositeKey(result.getKey()).getAttributes();
+            long nanos = Long.parseLong(attributes.get(0));
+            if (nanos > settledNanos) {
+                // all following changes are newer, they are returned by a later call
+                break;
+            }
+            changes.append(new StringBuilder(192)
+                    .append("{\"did\":").append(JSONObject.quote(attributes.get(2)))
+                    .append(",\"operation\":").append(JSONObject.quote(result.getStringValue()))
+                    .append(",\"timestamp\":").append(JSONObject.quote(Instant.ofEpochSecond(0, nanos).toString()))
+                    .append(",\"txId\":").append(JSONObject.quote(attributes.get(1)))
+                    .append('}').toString());
+            lastKey = result.getKey();
+        }
+
+        state.getMetrics().recordsReturned(changes.size());
+        return changes.finishCursor(lastKey.isEmpty() ? ""
+                : Base64.getUrlEncoder().encodeToString(lastKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reports how much storage the compression of large DID documents saves.
+     *
+     * @param ctx the transaction context
+     * @return the record and byte counts and the compression ratio of the compressed documents
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetCompressionStatistics(final Context ctx) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+
+        long records = 0;
+        long compressedRecords = 0;
+        long storedBytes = 0;
+        long documentBytes = 0;
+        long compressedDocumentBytes = 0;
+        long originalSizeOfCompressedDocuments = 0;
+
+        for (String prefix : RECORD_PREFIXES) {
+            QueryResultsIterator<KeyValue> results = state.getStateByRange(prefix, rangeEnd(prefix));
+            if (results == null) {
+                continue;
+            }
+            for (KeyValue result: results) {
+                byte[] value = result.getValue();
+                int documentSize = state.decode(value).getDidDocument().getBytes(StandardCharsets.UTF_8).length;
+                int compressedSize = DatasetCodec.compressedDocumentSize(value);
+
+                records++;
+                storedBytes += value.length;
+                documentBytes += documentSize;
+                if (compressedSize >= 0) {
+                    compressedRecords++;
+                    compressedDocumentBytes += compressedSize;
+                    originalSizeOfCompressedDocuments += documentSize;
+                }
+            }
+        }
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("compressionThreshold", DatasetCodec.COMPRESSION_THRESHOLD);
+        statistics.put("records", records);
+        statistics.put("compressedRecords", compressedRecords);
+        statistics.put("storedBytes", storedBytes);
+        statistics.put("documentBytes", documentBytes);
+        statistics.put("compressedDocumentBytes", compressedDocumentBytes);
+        statistics.put("compressionRatio", compressedDocumentBytes == 0
+                ? 1.0 : (double) originalSizeOfCompressedDocuments / compressedDocumentBytes);
+        return genson.serialize(statistics);
+    }
+
+    /**
+     * Reports the number of datasets per MSP, summed up from the delta entries written by the transactions
+     * creating datasets.
+     *
+     * @param ctx the transaction context
+     * @return the total number of datasets, the numbers per MSP ID and the number of delta entries
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetDatasetStatistics(final Context ctx) {
+        DatasetStatistics statistics = DatasetStatistics.read(DatasetContext.stateOf(ctx));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("datasets", statistics.getTotal());
+        response.put("datasetsByMspId", statistics.getDatasets());
+        response.put("deltas", statistics.getDeltas());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Replaces the delta entries of the dataset statistics by one entry per MSP, so reading them stays cheap.
+     * The transaction conflicts with concurrent creates and has to be retried in that case, the creates
+     * themselves are not affected.
+     *
+     * @param ctx the transaction context
+     * @return the number of delta entries before and after compacting
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CompactDatasetStatistics(final Context ctx) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        DatasetStatistics statistics = DatasetStatistics.read(state);
+
+        if (statistics.getDeltas() > statistics.getDatasets().size()) {
+            statistics.replace(state, statistics);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("deltas", statistics.getDeltas());
+        response.put("compactedDeltas", statistics.getDatasets().size());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Recounts the datasets per MSP from the owner index and replaces the dataset statistics with the result.
+     * Needed once for ledgers with datasets created before the statistics were introduced, after their
+     * indexes have been backfilled.
+     *
+     * @param ctx the transaction context
+     * @return the recounted statistics
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String RebuildDatasetStatistics(final Context ctx) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        DatasetStatistics counted = DatasetStatistics.count(state);
+        DatasetStatistics.read(state).replace(state, counted);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("datasets", counted.getTotal());
+        response.put("datasetsByMspId", counted.getDatasets());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Reports the digest over all datasets, updated by every transaction writing datasets, so the registry can be
+     * verified without downloading it. The digest of a bucket covers the datasets whose SHA-256 hashed DID starts
+     * with the byte given by the bucket.
+     *
+     * @param ctx the transaction context
+     * @return the digest over all datasets, the digests of all non-empty buckets and the number of delta entries
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetRegistryDigest(final Context ctx) {
+        RegistryDigest digest = RegistryDigest.read(DatasetContext.stateOf(ctx));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("algorithm", RegistryDigest.ALGORITHM);
+        response.put("digest", digest.getDigest());
+        response.put("buckets", digest.getBuckets());
+        response.put("deltas", digest.getDeltas());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Replaces the delta entries of the registry digest by one entry per bucket, so reading it stays cheap.
+     * The transaction conflicts with concurrent writes and has to be retried in that case, the writes
+     * themselves are not affected.
+     *
+     * @param ctx the transaction context
+     * @return the number of delta entries before and after compacting
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CompactRegistryDigest(final Context ctx) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        RegistryDigest digest = RegistryDigest.read(state);
+
+        if (digest.getDeltas() > digest.getBuckets().size()) {
+            digest.replace(state, digest);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("deltas", digest.getDeltas());
+        response.put("compactedDeltas", digest.getBuckets().size());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Computes the registry digest from all dataset records and replaces the delta entries with the result.
+     * Needed once for ledgers with datasets written before the digest was introduced.
+     *
+     * @param ctx the transaction context
+     * @return the computed digest
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String RebuildRegistryDigest(final Context ctx) {
+        TransactionState state = DatasetContext.stateOf(ctx);
+        RegistryDigest computed = new RegistryDigest();
+
+        for (String prefix : RECORD_PREFIXES) {
+            QueryResultsIterator<KeyValue> results = state.getStateByRange(prefix, rangeEnd(prefix));
+
+            if (results != null) {
+                for (KeyValue result: results) {
+                    computed.add(state.decode(result.getValue()));
+                }
+            }
+        }
+        RegistryDigest.read(state).replace(state, computed);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("algorithm", RegistryDigest.ALGORITHM);
+        response.put("digest", computed.getDigest());
+        response.put("buckets", computed.getBuckets());
+        return genson.serialize(response);
+    }
+
+    /**
+     * Reports the metrics of the transactions handled by the chaincode process of the queried peer.
+     *
+     * @param ctx the transaction context
+     * @return the metrics in the Prometheus text format
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetMetrics(final Context ctx) {
+        return METRICS.toPrometheus();
+    }
+
+    private String writeDatasets(final Context ctx, final String didDocuments, final boolean upsert) {
+        List<String> documents;
+        try {
+            documents = JsonScanner.splitArray(didDocuments);
+        } catch (JSONException e) {
+            String errorMessage = "DID documents must be a JSON array";
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+
+        TransactionState state = DatasetContext.stateOf(ctx);
 
-        for (String each : subjectDN.getName().split(",\\s*")) {
-            if (each.startsWith("CN=")) {
-                commonName = each.substring(3);
+        ClientIdentity clientIdentity = ctx.getClientIdentity();
+        DatasetOwner owner = convertClientIdentityToOwner(clientIdentity);
+
+        List<DatasetWriteResult> results = new ArrayList<>(documents.size());
+        DatasetChangeEvent event = new DatasetChangeEvent();
+        RegistryDigest digest = new RegistryDigest();
+        int created = 0;
+
+        for (String document : documents) {
+            if (document.charAt(0) != '{') {
+                results.add(DatasetWriteResult.rejected(null, "DID document is not a JSON object"));
+                continue;
+            }
+
+            DidDocumentFields fields;
+            try {
+                fields = DidDocumentFields.scan(CanonicalJson.canonicalize(document));
+            } catch (JSONException e) {
+                results.add(DatasetWriteResult.rejected(null, e.getMessage()));
+                continue;
+            }
+
+            String did = fields.optString(DidDocumentFields.ID);
+            if (did == null || did.isEmpty()) {
+                results.add(DatasetWriteResult.rejected(null, "DID document has no id"));
+                continue;
             }
+
+            // Earlier documents of the batch are visible through the transaction state
+            Dataset oldDataset = state.getDataset(did);
+            String status = DatasetWriteResult.CREATED;
+            DidDocumentFields oldFields = null;
+
+            if (oldDataset != null) {
+                if (!upsert) {
+                    results.add(DatasetWriteResult.rejected(did, String.format("Dataset %s already exist", did)));
+                    continue;
+                }
+
+                if (!oldDataset.getOwner().equals(owner)) {
+                    results.add(DatasetWriteResult.rejected(did, "User is not authorized"));
+                    continue;
+                }
+
+                oldFields = DidDocumentFields.scan(oldDataset.getDidDocument());
+                try {
+                    fields = preserveIssued(oldFields, fields);
+                } catch (JSONException e) {
+                    results.add(DatasetWriteResult.rejected(did, e.getMessage()));
+                    continue;
+                }
+
+                if (isUnchanged(oldFields, fields.getDocument(), fields)) {
+                    results.add(new DatasetWriteResult(did, DatasetWriteResult.UNCHANGED, null));
+                    continue;
+                }
+                status = DatasetWriteResult.UPDATED;
+            }
+
+            Dataset dataset = new Dataset(did, fields.getDocument(), owner);
+            state.putDataset(dataset);
+            String summary = putIndexes(state, dataset, fields, oldFields);
+            putChange(state, did, status);
+            digest.change(oldDataset, dataset);
+            event.add(summary, status);
+            results.add(new DatasetWriteResult(did, status, null));
+            if (DatasetWriteResult.CREATED.equals(status)) {
+                created++;
+            }
+        }
+
+        DatasetStatistics.putDelta(state, owner.getMspId(), created);
+        digest.putDeltas(state);
+        event.emit(state.getStub());
+        return genson.serialize(results);
+    }
+
+    /**
+     * Keeps the issued date of the existing dataset, it must not be changed by an update.
+     *
+     * @param oldFields the fields of the stored document
+     * @param fields the fields of the canonical updated document
+     * @return the fields of the canonical document with the stored issued date
+     */
+    private static DidDocumentFields preserveIssued(final DidDocumentFields oldFields,
+            final DidDocumentFields fields) {
+        String issued = oldFields.getString(DidDocumentFields.ISSUED);
+        if (issued.equals(fields.optString(DidDocumentFields.ISSUED))) {
+            return fields;
+        }
+        return DidDocumentFields.scan(CanonicalJson.canonicalize(fields.withString(DidDocumentFields.ISSUED, issued)));
+    }
+
+    /**
+     * Compares an updated DID document with the stored one. Documents with different hash values have changed,
+     * otherwise they are compared by their content, ignoring whitespace and the order of keys.
+     *
+     * @param oldFields the fields of the stored document
+     * @param didDocument the updated document
+     * @param fields the fields of the updated document
+     * @return whether the updated document has the same content as the stored one
+     */
+    static boolean isUnchanged(final DidDocumentFields oldFields, final String didDocument,
+            final DidDocumentFields fields) {
+        String oldHash = oldFields.hashValue();
+        String hash = fields.hashValue();
+        if (oldHash != null && hash != null && !oldHash.equals(hash)) {
+            return false;
+        }
+
+        String oldDocument = oldFields.getDocument();
+        return oldDocument.equals(didDocument) || new JSONObject(oldDocument).similar(new JSONObject(didDocument));
+    }
+
+    private static void putDigestChange(final TransactionState state, final Dataset oldDataset,
+            final Dataset dataset) {
+        RegistryDigest digest = new RegistryDigest();
+        digest.change(oldDataset, dataset);
+        digest.putDeltas(state);
+    }
+
+    private static void emitChange(final TransactionState state, final String summary, final String operation) {
+        DatasetChangeEvent event = new DatasetChangeEvent();
+        event.add(summary, operation);
+        event.emit(state.getStub());
+    }
+
+    static DatasetOwner convertClientIdentityToOwner(final ClientIdentity clientIdentity) {
+        return OWNERS.resolve(clientIdentity);
+    }
+
+    /**
+     * @param did the DID of the dataset
+     * @return the key of the dataset record
+     */
+    static String datasetKey(final String did) {
+        return DATASET_PREFIX + did;
+    }
+
+    /**
+     * @return the exclusive end of the range of all keys starting with prefix
+     */
+    private static String rangeEnd(final String prefix) {
+        char last = prefix.charAt(prefix.length() - 1);
+        return prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+    }
+
+    /**
+     * @return the start key of a batch within the keys starting with prefix
+     */
+    private static String rangeStart(final String startKey, final String prefix) {
+        if (startKey == null || startKey.isEmpty()) {
+            return prefix;
+        }
+        if (!startKey.startsWith(prefix)) {
+            String errorMessage = String.format("Start key %s does not start with %s", startKey, prefix);
+            LOGGER.warning(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+        return startKey;
+    }
+
+    static String ownerIndexKey(final Dataset dataset) {
+        DatasetOwner owner = dataset.getOwner();
+        return new CompositeKey(OWNER_INDEX, owner.getMspId(), owner.getUserId(), dataset.getDid()).toString();
+    }
+
+    static String controllerIndexKey(final String controller, final String did) {
+        return new CompositeKey(CONTROLLER_INDEX, controller, did).toString();
+    }
+
+    private static boolean isEmpty(final byte[] value) {
+        return value == null || value.length == 0;
+    }
+
+    /**
+     * @return the name of the invoked transaction without the contract namespace
+     */
+    private static String transactionName(final ChaincodeStub stub) {
+        String function = stub.getFunction();
+        if (function == null) {
+            return "unknown";
+        }
+        return function.substring(function.indexOf(':') + 1);
+    }
+
+    /**
+     * @return the change key a cursor points to, empty for an empty cursor
+     */
+    private static String cursorKey(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return "";
+        }
+        String key;
+        try {
+            key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            key = "";
+        }
+        if (!key.startsWith(new CompositeKey(CHANGE_INDEX).toString())) {
+            String errorMessage = String.format("Invalid cursor %s", cursor);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+        return key;
+    }
+
+    /**
+     * Adds a change of a dataset to the change feed. The timestamp is zero-padded, so the keys are ordered by it.
+     */
+    private static void putChange(final TransactionState state, final String did, final String operation) {
+        ChaincodeStub stub = state.getStub();
+        Instant timestamp = stub.getTxTimestamp();
+        String nanos = String.format("%019d", timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano());
+        state.putStringState(new CompositeKey(CHANGE_INDEX, nanos, stub.getTxId(), did).toString(), operation);
+    }
+
+    private static String historyEntry(final TransactionState state, final KeyModification modification,
+            final boolean metadataOnly) {
+        StringBuilder entry = new StringBuilder(128)
+                .append("{\"txId\":").append(JSONObject.quote(modification.getTxId()))
+                .append(",\"timestamp\":").append(JSONObject.quote(String.valueOf(modification.getTimestamp())))
+                .append(",\"isDelete\":").append(modification.isDeleted());
+        if (!metadataOnly) {
+            byte[] value = modification.getValue();
+            entry.append(",\"dataset\":")
+                    .append(modification.isDeleted() || isEmpty(value) ? "null" : state.toJson(value));
+        }
+        return entry.append('}').toString();
+    }
+
+    private static ChaincodeException historyTooDeep(final String did, final String bookmark) {
+        String errorMessage = String.format("Bookmark %s is more than %d entries deep in the history of dataset %s",
+                bookmark, MAX_HISTORY_DEPTH, did);
+        LOGGER.info(errorMessage);
+        return failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+    }
+
+    /**
+     * Counts the transaction running on the current thread as failed.
+     *
+     * @param errorMessage the message of the error
+     * @param error the error code returned to the client
+     * @return the exception to throw
+     */
+    private static ChaincodeException failure(final String errorMessage, final DatasetManagementError error) {
+        recordFailure();
+        return new ChaincodeException(errorMessage, error.toString());
+    }
+
+    private static void recordFailure() {
+        Context ctx = CURRENT_TRANSACTION.get();
+        if (ctx != null) {
+            CURRENT_TRANSACTION.remove();
+            METRICS.recordFailure(transactionName(ctx.getStub()));
+        }
+    }
+
+    private static void close(final QueryResultsIterator<?> results) {
+        try {
+            results.close();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not close query results", e);
         }
+    }
 
-        String userId = commonName;
-        String mspId = clientIdentity.getMSPID();
-        return new DatasetOwner(userId, mspId);
+    private static void checkPageSize(final int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            String errorMessage = String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE);
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.INVALID_ARGUMENT);
+        }
+    }
+
+    /**
+     * Rejects clients whose certificate does not have the {@link #ADMIN_ATTRIBUTE} of administrators.
+     */
+    private static void checkAdministrator(final Context ctx) {
+        ClientIdentity clientIdentity = ctx.getClientIdentity();
+        if (clientIdentity == null || !clientIdentity.assertAttributeValue(ADMIN_ATTRIBUTE, ADMIN_ATTRIBUTE_VALUE)) {
+            String errorMessage = "User is not authorized";
+            LOGGER.info(errorMessage);
+            throw failure(errorMessage, DatasetManagementError.USER_NOT_AUTHORIZED);
+        }
+    }
+
+    private static String finishPage(final DatasetJsonWriter records, final QueryResponseMetadata metadata) {
+        return records.finishPage(metadata.getBookmark(), metadata.getFetchedRecordsCount());
+    }
+
+    /**
+     * Writes the index entries and the summary of a dataset. Updates keep the owner, so its entry is only written
+     * without old fields. Controller entries are only written if the controller is new, entries of controllers no
+     * longer in the document are deleted.
+     *
+     * @param state the transaction state
+     * @param dataset the written dataset
+     * @param fields the fields of its DID document
+     * @param oldFields the fields of the replaced DID document, null if there is none or its entries may be missing
+     * @return the JSON of the summary of the dataset
+     */
+    private static String putIndexes(final TransactionState state, final Dataset dataset,
+            final DidDocumentFields fields, final DidDocumentFields oldFields) {
+        if (oldFields == null) {
+            state.putStringState(ownerIndexKey(dataset), INDEX_VALUE);
+        }
+
+        String summary = DatasetSummary.toJson(dataset, fields);
+        state.putStringState(DatasetSummary.key(dataset.getDid()), summary);
+
+        Set<String> controllers = fields.controllers();
+        Set<String> oldControllers = oldFields == null ? Collections.emptySet() : oldFields.controllers();
+        for (String controller : oldControllers) {
+            if (!controllers.contains(controller)) {
+                state.delState(controllerIndexKey(controller, dataset.getDid()));
+            }
+        }
+        for (String controller : controllers) {
+            if (!oldControllers.contains(controller)) {
+                state.putStringState(controllerIndexKey(controller, dataset.getDid()), INDEX_VALUE);
+            }
+        }
+        return summary;
     }
 
 }
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+
+/**
+ * Least recently used cache of the owners resolved from client certificates.
+ *
+ * Clients are mostly a small set of long-lived identities, so the subject of their certificates
+ * does not need to be parsed on every transaction. Entries are keyed by the MSP ID and the ID of the client
+ * identity, which the shim already built from the subject and issuer of the certificate. The owner only depends
+ * on the subject and the MSP ID, so identities with the same key have the same owner.
+ */
+final class DatasetOwnerCache {
+
+    private final Map<String, DatasetOwner> owners;
+
+    DatasetOwnerCache(final int capacity) {
+        this.owners = new LinkedHashMap<String, DatasetOwner>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, DatasetOwner> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param clientIdentity the identity of the client
+     * @return the owner of the client's certificate, the same instance for repeated calls
+     */
+    DatasetOwner resolve(final ClientIdentity clientIdentity) {
+        String mspId = clientIdentity.getMSPID();
+        String key = mspId + '|' + clientIdentity.getId();
+
+        synchronized (owners) {
+            DatasetOwner owner = owners.get(key);
+            if (owner != null) {
+                return owner;
+            }
+        }
+
+        String userId = DistinguishedNames.commonName(clientIdentity.getX509Certificate().getSubjectDN().getName());
+        DatasetOwner owner = new DatasetOwner(userId, mspId);
+
+        synchronized (owners) {
+            DatasetOwner cached = owners.putIfAbsent(key, owner);
+            return cached == null ? owner : cached;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Number of datasets per MSP, kept as delta entries instead of a counter.
+ *
+ * Every transaction changing the counts writes its own entry, keyed by the transaction ID, so concurrent
+ * transactions never write the same key and cannot invalidate each other. The counts are the sums of all
+ * entries; compacting replaces the entries by a single one per MSP.
+ */
+final class DatasetStatistics {
+
+    /**
+     * Object type of the composite keys of the delta entries.
+     */
+    static final String DELTA = "stats~mspId~txId";
+
+    private final Map<String, Long> datasets = new TreeMap<>();
+
+    private final List<String> keys = new ArrayList<>();
+
+    private DatasetStatistics() { }
+
+    /**
+     * Sums up all delta entries.
+     *
+     * @param state the transaction state
+     * @return the current statistics
+     */
+    static DatasetStatistics read(final TransactionState state) {
+        DatasetStatistics statistics = new DatasetStatistics();
+        QueryResultsIterator<KeyValue> results = state.getStateByPartialCompositeKey(DELTA);
+
+        if (results != null) {
+            for (KeyValue result : results) {
+                String mspId = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+                statistics.datasets.merge(mspId, Long.parseLong(result.getStringValue()), Long::sum);
+                statistics.keys.add(result.getKey());
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Counts the datasets by their owner index entries.
+     *
+     * @param state the transaction state
+     * @return statistics without delta entries
+     */
+    static DatasetStatistics count(final TransactionState state) {
+        DatasetStatistics statistics = new DatasetStatistics();
+        QueryResultsIterator<KeyValue> results = state.getStateByPartialCompositeKey(DatasetManagement.OWNER_INDEX);
+
+        if (results != null) {
+            for (KeyValue result : results) {
+                String mspId = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+                statistics.datasets.merge(mspId, 1L, Long::sum);
+            }
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Writes the delta entry of the current transaction. Must be called at most once per transaction and MSP.
+     *
+     * @param state the transaction state
+     * @param mspId the MSP whose count changes
+     * @param delta the change of the number of datasets
+     */
+    static void putDelta(final TransactionState state, final String mspId, final long delta) {
+        if (delta != 0) {
+            String key = new CompositeKey(DELTA, mspId, state.getStub().getTxId()).toString();
+            state.putStringState(key, Long.toString(delta));
+        }
+    }
+
+    /**
+     * Replaces all delta entries that were read by a single entry per MSP.
+     *
+     * @param state the transaction state
+     * @param target the counts to write, this or the result of {@link #count(TransactionState)}
+     */
+    void replace(final TransactionState state, final DatasetStatistics target) {
+        for (String key : keys) {
+            state.delState(key);
+        }
+        for (Map.Entry<String, Long> entry : target.datasets.entrySet()) {
+            putDelta(state, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the number of datasets by MSP ID
+     */
+    Map<String, Long> getDatasets() {
+        return Collections.unmodifiableMap(datasets);
+    }
+
+    long getTotal() {
+        return datasets.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return the number of delta entries the statistics were read from
+     */
+    int getDeltas() {
+        return keys.size();
+    }
+}
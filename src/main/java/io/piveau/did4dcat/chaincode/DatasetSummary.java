@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.json.JSONObject;
+
+/**
+ * The fields of a dataset most listings need, stored next to the dataset so they can be listed
+ * without reading and decoding the DID documents:
+ * {@code {"did":..,"owner":{"mspId":..,"userId":..},"modified":..,"hash":..}},
+ * where modified and hash are taken from the DID document and are null if it has none.
+ */
+final class DatasetSummary {
+
+    /**
+     * Object type of the composite keys of the summaries.
+     */
+    static final String SUMMARY = "summary~did";
+
+    private DatasetSummary() { }
+
+    static String key(final String did) {
+        return new CompositeKey(SUMMARY, did).toString();
+    }
+
+    /**
+     * @param dataset the dataset
+     * @param fields the fields of its DID document
+     * @return the JSON of the summary
+     */
+    static String toJson(final Dataset dataset, final DidDocumentFields fields) {
+        String hash = fields.raw(DidDocumentFields.HASH);
+        String modified = fields.optString(DidDocumentFields.MODIFIED);
+        String mspId = dataset.getOwner().getMspId();
+        String userId = dataset.getOwner().getUserId();
+
+        return new StringBuilder(192)
+                .append("{\"did\":").append(JSONObject.quote(dataset.getDid()))
+                .append(",\"owner\":{\"mspId\":").append(mspId == null ? "null" : JSONObject.quote(mspId))
+                .append(",\"userId\":").append(userId == null ? "null" : JSONObject.quote(userId))
+                .append("},\"modified\":").append(modified == null ? "null" : JSONObject.quote(modified))
+                .append(",\"hash\":").append(hash == null ? "null" : hash)
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+@DataType()
+public final class DatasetWriteResult {
+
+    public static final String CREATED = "created";
+
+    public static final String UPDATED = "updated";
+
+    public static final String UNCHANGED = "unchanged";
+
+    public static final String REJECTED = "rejected";
+
+    @Property()
+    private final String did;
+
+    @Property()
+    private final String status;
+
+    @Property()
+    private final String reason;
+
+    public String getDid() {
+        return did;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public DatasetWriteResult(
+            @JsonProperty("did") final String did,
+            @JsonProperty("status") final String status,
+            @JsonProperty("reason") final String reason
+    ) {
+        this.did = did;
+        this.status = status;
+        this.reason = reason;
+    }
+
+    static DatasetWriteResult rejected(final String did, final String reason) {
+        return new DatasetWriteResult(did, REJECTED, reason);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + " [did=" + did + ", status=" + status + ", reason=" + reason + "]";
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The top-level fields of a DID document the contract works with, read in a single pass.
+ *
+ * The document is validated while it is scanned, but no tree is built: only the positions of the
+ * known fields are kept and their values are decoded on demand. Fields can be replaced by splicing
+ * the document text, everything else is kept as it is.
+ */
+final class DidDocumentFields {
+
+    static final String ID = "id";
+    static final String ISSUED = "issued";
+    static final String MODIFIED = "modified";
+    static final String CONTROLLER = "controller";
+    static final String HASH = "hash";
+
+    private static final String[] FIELDS = {ID, ISSUED, MODIFIED, CONTROLLER, HASH};
+
+    private final String document;
+
+    private final int[] valueStarts = new int[FIELDS.length];
+
+    private final int[] valueEnds = new int[FIELDS.length];
+
+    private int objectStart;
+
+    private boolean empty;
+
+    private DidDocumentFields(final String document) {
+        this.document = document;
+    }
+
+    /**
+     * @param document the DID document
+     * @return the fields of the document
+     * @throws JSONException if the document is not a JSON object
+     */
+    static DidDocumentFields scan(final String document) {
+        DidDocumentFields fields = new DidDocumentFields(document);
+        JsonScanner scanner = new JsonScanner(document);
+
+        if (scanner.peek() != '{') {
+            throw new JSONException("A JSONObject text must begin with '{'");
+        }
+        fields.objectStart = scanner.position();
+        scanner.expect('{');
+
+        if (scanner.peek() == '}') {
+            fields.empty = true;
+            scanner.expect('}');
+        } else {
+            do {
+                if (scanner.peek() != '"') {
+                    throw scanner.syntaxError("Expected a key");
+                }
+                int keyStart = scanner.position();
+                boolean escaped = scanner.skipString();
+                int field = escaped
+                        ? indexOf(new JsonScanner(document.substring(keyStart, scanner.position())).readString())
+                        : indexOf(document, keyStart + 1, scanner.position() - 1);
+                scanner.expect(':');
+                scanner.skipWhitespace();
+                int valueStart = scanner.position();
+                scanner.skipValue();
+
+                if (field >= 0) {
+                    if (fields.valueEnds[field] > 0) {
+                        throw new JSONException("Duplicate key \"" + FIELDS[field] + "\"");
+                    }
+                    fields.valueStarts[field] = valueStart;
+                    fields.valueEnds[field] = scanner.position();
+                }
+            } while (scanner.next(',', '}') == ',');
+        }
+        scanner.expectEnd();
+
+        return fields;
+    }
+
+    String getDocument() {
+        return document;
+    }
+
+    boolean has(final String name) {
+        return valueEnds[field(name)] > 0;
+    }
+
+    /**
+     * @param name the name of the field
+     * @return the text of the field's value, null if the field does not exist
+     */
+    String raw(final String name) {
+        int field = field(name);
+        return valueEnds[field] > 0 ? document.substring(valueStarts[field], valueEnds[field]) : null;
+    }
+
+    /**
+     * @param name the name of the field
+     * @return the string value of the field
+     * @throws JSONException if the field does not exist or is not a string
+     */
+    String getString(final String name) {
+        String value = optString(name);
+        if (value == null) {
+            throw new JSONException("JSONObject[\"" + name + "\"] not found or not a string.");
+        }
+        return value;
+    }
+
+    /**
+     * @param name the name of the field
+     * @return the string value of the field, null if it does not exist or is not a string
+     */
+    String optString(final String name) {
+        int field = field(name);
+        if (valueEnds[field] == 0 || document.charAt(valueStarts[field]) != '"') {
+            return null;
+        }
+        JsonScanner scanner = new JsonScanner(document.substring(valueStarts[field], valueEnds[field]));
+        return scanner.readString();
+    }
+
+    /**
+     * @return the controllers of the document, the controller field can be a single DID or an array of DIDs
+     */
+    Set<String> controllers() {
+        String controller = raw(CONTROLLER);
+        if (controller == null) {
+            return Collections.emptySet();
+        }
+        if (controller.charAt(0) == '"') {
+            return Collections.singleton(optString(CONTROLLER));
+        }
+
+        Set<String> controllers = new LinkedHashSet<>();
+        if (controller.charAt(0) == '[') {
+            JSONArray array = new JSONArray(controller);
+            for (int i = 0; i < array.length(); i++) {
+                if (array.opt(i) instanceof String) {
+                    controllers.add(array.getString(i));
+                }
+            }
+        }
+        return controllers;
+    }
+
+    /**
+     * @return the value of the hash field, null if there is no hash or it has no string value
+     */
+    String hashValue() {
+        String hash = raw(HASH);
+        if (hash == null || hash.charAt(0) != '{') {
+            return null;
+        }
+        return new JSONObject(hash).optString("value", null);
+    }
+
+    /**
+     * Returns the document with a string field set to the given value. An existing value is replaced in place,
+     * otherwise the field is added at the beginning of the document.
+     *
+     * @param name the name of the field
+     * @param value the new value
+     * @return the new document
+     */
+    String withString(final String name, final String value) {
+        int field = field(name);
+        String quoted = JSONObject.quote(value);
+
+        if (valueEnds[field] > 0) {
+            return new StringBuilder(document.length() + quoted.length())
+                    .append(document, 0, valueStarts[field])
+                    .append(quoted)
+                    .append(document, valueEnds[field], document.length())
+                    .toString();
+        }
+
+        return new StringBuilder(document.length() + name.length() + quoted.length() + 4)
+                .append(document, 0, objectStart + 1)
+                .append(JSONObject.quote(name)).append(':').append(quoted)
+                .append(empty ? "" : ",")
+                .append(document, objectStart + 1, document.length())
+                .toString();
+    }
+
+    private static int field(final String name) {
+        int field = indexOf(name);
+        if (field < 0) {
+            throw new IllegalArgumentException("Unknown field " + name);
+        }
+        return field;
+    }
+
+    private static int indexOf(final String name) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final String text, final int start, final int end) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].length() == end - start && text.startsWith(FIELDS[i], start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
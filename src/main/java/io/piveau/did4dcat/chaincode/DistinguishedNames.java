@@ -0,0 +1,39 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reads attributes from distinguished names as returned by {@code X509Certificate.getSubjectDN().getName()}.
+ *
+ * The owners stored on the ledger, and the keys of the owner index, were derived by splitting the name at commas.
+ * Escaped characters and multi-valued RDNs are therefore not interpreted, a stricter parser would give
+ * existing owners a different userId and take their datasets from them.
+ */
+final class DistinguishedNames {
+
+    private static final Pattern RDN_SEPARATOR = Pattern.compile(",\\s*");
+
+    private static final String COMMON_NAME = "CN=";
+
+    private DistinguishedNames() { }
+
+    /**
+     * Returns the common name of a distinguished name. If there are several, the last one wins.
+     *
+     * @param name the distinguished name
+     * @return the common name, null if there is none
+     */
+    static String commonName(final String name) {
+        String commonName = null;
+        for (String each : RDN_SEPARATOR.split(name)) {
+            if (each.startsWith(COMMON_NAME)) {
+                commonName = each.substring(COMMON_NAME.length());
+            }
+        }
+        return commonName;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JSON Patch (RFC 6902) for org.json documents, with JSON Pointer (RFC 6901) paths.
+ *
+ * A patch is applied to a copy of the document, so the document is left unchanged if an operation fails.
+ * Failing operations, including failed tests, are reported as {@link JSONException}.
+ */
+final class JsonPatch {
+
+    private JsonPatch() { }
+
+    /**
+     * @param document the document to patch
+     * @param patch the patch, an array of operations
+     * @return the patched copy of the document
+     */
+    static Object apply(final JSONObject document, final JSONArray patch) {
+        Object root = copy(document);
+
+        for (int i = 0; i < patch.length(); i++) {
+            JSONObject operation = patch.optJSONObject(i);
+            if (operation == null) {
+                throw new JSONException(String.format("Patch operation %d is not an object", i));
+            }
+            String op = operation.optString("op", "");
+            List<String> path = parsePointer(required(operation, "path", i));
+
+            switch (op) {
+                case "add":
+                    root = add(root, path, value(operation, i));
+                    break;
+                case "remove":
+                    root = remove(root, path);
+                    break;
+                case "replace":
+                    root = remove(root, path);
+                    root = add(root, path, value(operation, i));
+                    break;
+                case "move":
+                    List<String> from = parsePointer(required(operation, "from", i));
+                    if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+                        throw new JSONException(String.format("Patch operation %d moves a value into itself", i));
+                    }
+                    Object moved = get(root, from);
+                    root = remove(root, from);
+                    root = add(root, path, moved);
+                    break;
+                case "copy":
+                    Object copied = copy(get(root, parsePointer(required(operation, "from", i))));
+                    root = add(root, path, copied);
+                    break;
+                case "test":
+                    if (!equal(get(root, path), value(operation, i))) {
+                        throw new JSONException(String.format("Patch test %d failed for %s",
+                                i, operation.getString("path")));
+                    }
+                    break;
+                default:
+                    throw new JSONException(String.format("Unknown patch operation '%s' at %d", op, i));
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * @param pointer a JSON Pointer
+     * @return the unescaped reference tokens of the pointer
+     */
+    static List<String> parsePointer(final String pointer) {
+        List<String> tokens = new ArrayList<>();
+        if (pointer.isEmpty()) {
+            return tokens;
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new JSONException(String.format("Invalid JSON Pointer '%s'", pointer));
+        }
+        for (String token : pointer.substring(1).split("/", -1)) {
+            tokens.add(token.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+
+    private static String required(final JSONObject operation, final String member, final int index) {
+        if (!(operation.opt(member) instanceof String)) {
+            throw new JSONException(String.format("Patch operation %d has no %s", index, member));
+        }
+        return operation.getString(member);
+    }
+
+    private static Object value(final JSONObject operation, final int index) {
+        if (!operation.has("value")) {
+            throw new JSONException(String.format("Patch operation %d has no value", index));
+        }
+        return operation.get("value");
+    }
+
+    private static Object get(final Object root, final List<String> path) {
+        Object current = root;
+        for (String token : path) {
+            current = child(current, token);
+        }
+        return current;
+    }
+
+    private static Object child(final Object container, final String token) {
+        if (container instanceof JSONObject && ((JSONObject) container).has(token)) {
+            return ((JSONObject) container).get(token);
+        }
+        if (container instanceof JSONArray) {
+            JSONArray array = (JSONArray) container;
+            return array.get(index(token, array.length() - 1));
+        }
+        throw new JSONException(String.format("Path element '%s' does not exist", token));
+    }
+
+    private static Object add(final Object root, final List<String> path, final Object value) {
+        if (path.isEmpty()) {
+            return value;
+        }
+        Object parent = get(root, path.subList(0, path.size() - 1));
+        String token = path.get(path.size() - 1);
+
+        if (parent instanceof JSONObject) {
+            ((JSONObject) parent).put(token, value);
+        } else if (parent instanceof JSONArray) {
+            JSONArray array = (JSONArray) parent;
+            int index = "-".equals(token) ? array.length() : index(token, array.length());
+            for (int i = array.length(); i > index; i--) {
+                array.put(i, array.get(i - 1));
+            }
+            array.put(index, value);
+        } else {
+            throw new JSONException(String.format("Cannot add '%s' to a value that is not a container", token));
+        }
+        return root;
+    }
+
+    private static Object remove(final Object root, final List<String> path) {
+        if (path.isEmpty()) {
+            throw new JSONException("Cannot remove the document itself");
+        }
+        Object parent = get(root, path.subList(0, path.size() - 1));
+        String token = path.get(path.size() - 1);
+
+        if (parent instanceof JSONObject && ((JSONObject) parent).has(token)) {
+            ((JSONObject) parent).remove(token);
+        } else if (parent instanceof JSONArray) {
+            JSONArray array = (JSONArray) parent;
+            array.remove(index(token, array.length() - 1));
+        } else {
+            throw new JSONException(String.format("Path element '%s' does not exist", token));
+        }
+        return root;
+    }
+
+    /**
+     * Parses an array index, which must not have leading zeros and must not exceed the given maximum.
+     */
+    private static int index(final String token, final int max) {
+        if (!token.matches("0|[1-9][0-9]{0,8}")) {
+            throw new JSONException(String.format("Invalid array index '%s'", token));
+        }
+        int index = Integer.parseInt(token);
+        if (index > max) {
+            throw new JSONException(String.format("Array index %d is out of bounds", index));
+        }
+        return index;
+    }
+
+    private static Object copy(final Object value) {
+        if (value instanceof JSONObject) {
+            return new JSONObject(value.toString());
+        }
+        if (value instanceof JSONArray) {
+            return new JSONArray(value.toString());
+        }
+        return value;
+    }
+
+    /**
+     * Compares two JSON values like the test operation does, numbers by their numeric value.
+     *
+     * @return whether the values are equal, or both null
+     */
+    static boolean equal(final Object first, final Object second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        if (first instanceof JSONObject && second instanceof JSONObject) {
+            return ((JSONObject) first).similar(second);
+        }
+        if (first instanceof JSONArray && second instanceof JSONArray) {
+            return ((JSONArray) first).similar(second);
+        }
+        if (first instanceof Number && second instanceof Number) {
+            return new BigDecimal(first.toString()).compareTo(new BigDecimal(second.toString())) == 0;
+        }
+        return first.equals(second);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+
+/**
+ * Validating forward-only scanner over a JSON text.
+ *
+ * Values are skipped without building a tree, only strings that are asked for are decoded.
+ * Syntax errors are reported as {@link JSONException}, like org.json does.
+ */
+final class JsonScanner {
+
+    /**
+     * Maximum nesting depth of arrays and objects.
+     */
+    static final int MAX_DEPTH = 256;
+
+    private final String json;
+
+    private int position;
+
+    private int depth;
+
+    JsonScanner(final String json) {
+        this.json = json;
+    }
+
+    /**
+     * Splits a JSON array into the texts of its elements, without parsing them into trees.
+     *
+     * @param json the JSON array
+     * @return the text of each element
+     */
+    static List<String> splitArray(final String json) {
+        JsonScanner scanner = new JsonScanner(json);
+        List<String> elements = new ArrayList<>();
+
+        scanner.expect('[');
+        if (scanner.peek() == ']') {
+            scanner.position++;
+        } else {
+            do {
+                scanner.skipWhitespace();
+                int start = scanner.position;
+                scanner.skipValue();
+                elements.add(json.substring(start, scanner.position));
+            } while (scanner.next(',', ']') == ',');
+        }
+        scanner.expectEnd();
+
+        return elements;
+    }
+
+    String text() {
+        return json;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * @return the next non whitespace character without consuming it, 0 at the end of the text
+     */
+    char peek() {
+        skipWhitespace();
+        return position < json.length() ? json.charAt(position) : 0;
+    }
+
+    void expect(final char c) {
+        if (peek() != c) {
+            throw syntaxError("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    /**
+     * Consumes the next character, which must be one of the two given ones.
+     */
+    char next(final char first, final char second) {
+        char c = peek();
+        if (c != first && c != second) {
+            throw syntaxError("Expected '" + first + "' or '" + second + "'");
+        }
+        position++;
+        return c;
+    }
+
+    void expectEnd() {
+        if (peek() != 0) {
+            throw syntaxError("Unexpected content after the end of the value");
+        }
+    }
+
+    /**
+     * Skips a string, the scanner must be positioned at its opening quote.
+     *
+     * @return whether the string contains escape sequences
+     */
+    boolean skipString() {
+        expect('"');
+        boolean escaped = false;
+        while (position < json.length()) {
+            char c = json.charAt(position++);
+            if (c == '"') {
+                return escaped;
+            } else if (c == '\\') {
+                escaped = true;
+                skipEscape();
+            } else if (c < ' ') {
+                throw syntaxError("Unescaped control character in string");
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Reads and decodes a string, the scanner must be positioned at its opening quote.
+     */
+    String readString() {
+        int start = position + 1;
+        if (!skipString()) {
+            return json.substring(start, position - 1);
+        }
+        return unescape(json, start, position - 1);
+    }
+
+    /**
+     * Skips any value, validating its syntax.
+     */
+    void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipContainer(c);
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            skipNumber();
+        } else if (json.startsWith("true", position)) {
+            position += 4;
+        } else if (json.startsWith("false", position)) {
+            position += 5;
+        } else if (json.startsWith("null", position)) {
+            position += 4;
+        } else {
+            throw syntaxError("Unexpected value");
+        }
+    }
+
+    void skipWhitespace() {
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    JSONException syntaxError(final String message) {
+        return new JSONException(message + " at " + position);
+    }
+
+    private void skipContainer(final char open) {
+        if (++depth > MAX_DEPTH) {
+            throw syntaxError("Nesting too deep");
+        }
+        char close = open == '{' ? '}' : ']';
+        position++;
+
+        if (peek() == close) {
+            position++;
+        } else {
+            do {
+                if (open == '{') {
+                    if (peek() != '"') {
+                        throw syntaxError("Expected a key");
+                    }
+                    skipString();
+                    expect(':');
+                }
+                skipValue();
+            } while (next(',', close) == ',');
+        }
+        depth--;
+    }
+
+    private void skipNumber() {
+        int start = position;
+        if (json.charAt(position) == '-') {
+            position++;
+        }
+        int integerStart = position;
+        skipDigits();
+        if (position == integerStart || (json.charAt(integerStart) == '0' && position - integerStart > 1)) {
+            throw syntaxError("Malformed number");
+        }
+        if (position < json.length() && json.charAt(position) == '.') {
+            position++;
+            requireDigits();
+        }
+        if (position < json.length() && (json.charAt(position) == 'e' || json.charAt(position) == 'E')) {
+            position++;
+            if (position < json.length() && (json.charAt(position) == '+' || json.charAt(position) == '-')) {
+                position++;
+            }
+            requireDigits();
+        }
+        if (position == start) {
+            throw syntaxError("Malformed number");
+        }
+    }
+
+    private void skipDigits() {
+        while (position < json.length() && json.charAt(position) >= '0' && json.charAt(position) <= '9') {
+            position++;
+        }
+    }
+
+    private void requireDigits() {
+        int start = position;
+        skipDigits();
+        if (position == start) {
+            throw syntaxError("Malformed number");
+        }
+    }
+
+    private void skipEscape() {
+        if (position >= json.length()) {
+            throw syntaxError("Unterminated string");
+        }
+        char c = json.charAt(position++);
+        if (c == 'u') {
+            if (position + 4 > json.length()) {
+                throw syntaxError("Malformed unicode escape");
+            }
+            for (int i = 0; i < 4; i++) {
+                if (Character.digit(json.charAt(position++), 16) < 0) {
+                    throw syntaxError("Malformed unicode escape");
+                }
+            }
+        } else if ("\"\\/bfnrt".indexOf(c) < 0) {
+            throw syntaxError("Illegal escape");
+        }
+    }
+
+    private static String unescape(final String json, final int start, final int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = json.charAt(i++);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            char escape = json.charAt(i++);
+            switch (escape) {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default:
+                    value.append(escape);
+            }
+        }
+        return value.toString();
+    }
+}
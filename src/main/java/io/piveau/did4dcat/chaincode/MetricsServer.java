@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of the chaincode process in the Prometheus text format on {@code /metrics}.
+ */
+final class MetricsServer {
+
+    private static HttpServer server;
+
+    private MetricsServer() { }
+
+    /**
+     * Starts the server once per process, later calls have no effect.
+     *
+     * @param port the port to listen on, 0 does not start a server
+     * @param metrics the metrics to serve
+     */
+    static synchronized void start(final int port, final ChaincodeMetrics metrics) {
+        if (port <= 0 || server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            ContractLogging.logger().warning(
+                    String.format("Could not start metrics server on port %d: %s", port, e.getMessage()));
+            return;
+        }
+        server.createContext("/metrics", exchange -> {
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+    }
+}
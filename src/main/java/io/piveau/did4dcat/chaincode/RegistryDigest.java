@@ -0,0 +1,243 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * Digest over all datasets of the registry, the sum modulo 2^256 of the SHA-256 hashes of did, a zero byte and the
+ * DID document of every dataset. Being order independent, it can be updated with every write instead of being
+ * computed over all datasets: a created dataset adds its hash, a changed one subtracts its old hash.
+ * Unlike XOR, the sum is not linear over bits, so a set of datasets matching a given digest cannot be found by
+ * solving a system of linear equations.
+ *
+ * The datasets are split into 256 buckets by the first byte of the SHA-256 hash of their DID, so a
+ * mismatch can be narrowed down to the datasets of one bucket. Like {@link DatasetStatistics}, every transaction
+ * writes its own delta entries keyed by the transaction ID, and the digest of a bucket is the sum of its entries.
+ */
+final class RegistryDigest {
+
+    /**
+     * Object type of the composite keys of the delta entries.
+     */
+    static final String DELTA = "digest~bucket~txId";
+
+    static final String ALGORITHM = "add-sha256";
+
+    private static final int HASH_LENGTH = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Map<String, byte[]> buckets = new TreeMap<>();
+
+    private final List<String> keys = new ArrayList<>();
+
+    /**
+     * Creates an empty digest, used to collect the changes of a transaction.
+     */
+    RegistryDigest() { }
+
+    /**
+     * Adds up all delta entries.
+     *
+     * @param state the transaction state
+     * @return the current digest
+     */
+    static RegistryDigest read(final TransactionState state) {
+        RegistryDigest digest = new RegistryDigest();
+        QueryResultsIterator<KeyValue> results = state.getStateByPartialCompositeKey(DELTA);
+
+        if (results != null) {
+            for (KeyValue result : results) {
+                String bucket = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+                digest.add(bucket, fromHex(result.getStringValue()));
+                digest.keys.add(result.getKey());
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Adds a dataset to the digest.
+     *
+     * @param dataset the dataset
+     */
+    void add(final Dataset dataset) {
+        add(bucket(dataset), hash(dataset));
+    }
+
+    /**
+     * Removes a dataset that was added before from the digest.
+     *
+     * @param dataset the dataset
+     */
+    void remove(final Dataset dataset) {
+        add(bucket(dataset), negate(hash(dataset)));
+    }
+
+    /**
+     * Replaces the document of a dataset in the digest.
+     *
+     * @param oldDataset the dataset before the change, null if it was created
+     * @param dataset the dataset after the change
+     */
+    void change(final Dataset oldDataset, final Dataset dataset) {
+        if (oldDataset != null) {
+            remove(oldDataset);
+        }
+        add(dataset);
+    }
+
+    /**
+     * Writes the collected changes as delta entries of the current transaction. Must be called at most once per
+     * transaction.
+     *
+     * @param state the transaction state
+     */
+    void putDeltas(final TransactionState state) {
+        String txId = state.getStub().getTxId();
+        for (Map.Entry<String, byte[]> entry : buckets.entrySet()) {
+            String key = new CompositeKey(DELTA, entry.getKey(), txId).toString();
+            state.putStringState(key, toHex(entry.getValue(), HASH_LENGTH));
+        }
+    }
+
+    /**
+     * Replaces all delta entries that were read by a single entry per bucket.
+     *
+     * @param state the transaction state
+     * @param target the digest to write, this or one computed over all datasets
+     */
+    void replace(final TransactionState state, final RegistryDigest target) {
+        for (String key : keys) {
+            state.delState(key);
+        }
+        target.putDeltas(state);
+    }
+
+    /**
+     * @return the digest over all datasets as hex string
+     */
+    String getDigest() {
+        byte[] digest = new byte[HASH_LENGTH];
+        for (byte[] bucket : buckets.values()) {
+            add(digest, bucket);
+        }
+        return toHex(digest, HASH_LENGTH);
+    }
+
+    /**
+     * @return the digests by bucket as hex strings, empty buckets are left out
+     */
+    Map<String, String> getBuckets() {
+        Map<String, String> digests = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : buckets.entrySet()) {
+            digests.put(entry.getKey(), toHex(entry.getValue(), HASH_LENGTH));
+        }
+        return Collections.unmodifiableMap(digests);
+    }
+
+    /**
+     * @return the number of delta entries the digest was read from
+     */
+    int getDeltas() {
+        return keys.size();
+    }
+
+    private static String bucket(final Dataset dataset) {
+        MessageDigest sha256 = SHA256.get();
+        sha256.reset();
+        return toHex(sha256.digest(dataset.getDid().getBytes(StandardCharsets.UTF_8)), 1);
+    }
+
+    private static byte[] hash(final Dataset dataset) {
+        MessageDigest sha256 = SHA256.get();
+        sha256.reset();
+        sha256.update(dataset.getDid().getBytes(StandardCharsets.UTF_8));
+        sha256.update((byte) 0);
+        return sha256.digest(dataset.getDidDocument().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void add(final String bucket, final byte[] hash) {
+        byte[] digest = buckets.computeIfAbsent(bucket, key -> new byte[HASH_LENGTH]);
+        add(digest, hash);
+        if (isZero(digest)) {
+            buckets.remove(bucket);
+        }
+    }
+
+    /**
+     * Adds a big-endian 256 bit number to another one, modulo 2^256.
+     */
+    private static void add(final byte[] digest, final byte[] hash) {
+        int carry = 0;
+        for (int i = HASH_LENGTH - 1; i >= 0; i--) {
+            int sum = (digest[i] & 0xff) + (hash[i] & 0xff) + carry;
+            digest[i] = (byte) sum;
+            carry = sum >>> 8;
+        }
+    }
+
+    /**
+     * @return the two's complement of a big-endian 256 bit number, which subtracts it when added
+     */
+    private static byte[] negate(final byte[] hash) {
+        byte[] negated = new byte[HASH_LENGTH];
+        int carry = 1;
+        for (int i = HASH_LENGTH - 1; i >= 0; i--) {
+            int sum = (~hash[i] & 0xff) + carry;
+            negated[i] = (byte) sum;
+            carry = sum >>> 8;
+        }
+        return negated;
+    }
+
+    private static boolean isZero(final byte[] digest) {
+        for (byte b : digest) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toHex(final byte[] bytes, final int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static byte[] fromHex(final String hex) {
+        byte[] bytes = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
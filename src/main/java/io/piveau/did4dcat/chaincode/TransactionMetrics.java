@@ -0,0 +1,103 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+/**
+ * Counters of a single transaction, collected by its {@link TransactionState}.
+ */
+final class TransactionMetrics {
+
+    private long startNanos;
+
+    private long stateReads;
+
+    private long stateWrites;
+
+    private long rangeQueries;
+
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    private long recordsScanned;
+
+    private long recordsReturned;
+
+    private long serializationNanos;
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    boolean isStarted() {
+        return startNanos != 0;
+    }
+
+    /**
+     * @return the wall time since the start of the transaction
+     */
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    void stateRead(final byte[] value) {
+        stateReads++;
+        bytesRead += value == null ? 0 : value.length;
+    }
+
+    void stateWritten(final int bytes) {
+        stateWrites++;
+        bytesWritten += bytes;
+    }
+
+    void rangeQuery() {
+        rangeQueries++;
+    }
+
+    void recordScanned(final byte[] value) {
+        recordsScanned++;
+        bytesRead += value == null ? 0 : value.length;
+    }
+
+    void recordsReturned(final long count) {
+        recordsReturned += count;
+    }
+
+    void serialization(final long nanos) {
+        serializationNanos += nanos;
+    }
+
+    long getStateReads() {
+        return stateReads;
+    }
+
+    long getStateWrites() {
+        return stateWrites;
+    }
+
+    long getRangeQueries() {
+        return rangeQueries;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    long getRecordsScanned() {
+        return recordsScanned;
+    }
+
+    long getRecordsReturned() {
+        return recordsReturned;
+    }
+
+    long getSerializationNanos() {
+        return serializationNanos;
+    }
+}
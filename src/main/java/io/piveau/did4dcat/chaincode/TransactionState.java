@@ -0,0 +1,258 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * The world state as seen by one transaction.
+ *
+ * Values and decoded datasets are cached for the lifetime of the transaction, so repeated reads of a key
+ * do not go to the peer again. Writes update the cache, which makes them visible to later reads of the
+ * same transaction, the stub itself only returns the committed state.
+ */
+final class TransactionState {
+
+    private static final byte[] ABSENT = new byte[0];
+
+    private final ChaincodeStub stub;
+
+    private final Map<String, byte[]> values = new HashMap<>();
+
+    private final Map<String, Dataset> datasets = new HashMap<>();
+
+    private final TransactionMetrics metrics = new TransactionMetrics();
+
+    TransactionState(final ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    ChaincodeStub getStub() {
+        return stub;
+    }
+
+    TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, null or empty if it does not exist
+     */
+    byte[] getState(final String key) {
+        byte[] value = values.get(key);
+        if (value == null) {
+            value = stub.getState(key);
+            metrics.stateRead(value);
+            values.put(key, value == null ? ABSENT : value);
+        }
+        return value;
+    }
+
+    void putState(final String key, final byte[] value) {
+        stub.putState(key, value);
+        metrics.stateWritten(value.length);
+        values.put(key, value);
+        datasets.remove(didOf(key));
+    }
+
+    void putStringState(final String key, final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        stub.putStringState(key, value);
+        metrics.stateWritten(bytes.length);
+        values.put(key, bytes);
+        datasets.remove(didOf(key));
+    }
+
+    void delState(final String key) {
+        stub.delState(key);
+        metrics.stateWritten(0);
+        values.put(key, ABSENT);
+        datasets.remove(didOf(key));
+    }
+
+    /**
+     * @return the DID whose decoded dataset is cached for a dataset record key, the key itself for other keys
+     */
+    private static String didOf(final String key) {
+        return key.startsWith(DatasetManagement.DATASET_PREFIX)
+                ? key.substring(DatasetManagement.DATASET_PREFIX.length()) : key;
+    }
+
+    /**
+     * Reads the record of a dataset, falling back to the key of records that have not been migrated to
+     * {@link DatasetManagement#datasetKey(String)} yet.
+     *
+     * @param did the did of the dataset
+     * @return the stored record, null or empty if it does not exist
+     */
+    byte[] getDatasetRecord(final String did) {
+        byte[] value = getState(DatasetManagement.datasetKey(did));
+        if (value == null || value.length == 0) {
+            value = getState(did);
+        }
+        return value;
+    }
+
+    /**
+     * @param did the did of the dataset
+     * @return the decoded dataset, null if it does not exist
+     */
+    Dataset getDataset(final String did) {
+        Dataset dataset = datasets.get(did);
+        if (dataset == null) {
+            byte[] value = getDatasetRecord(did);
+            if (value == null || value.length == 0) {
+                return null;
+            }
+            dataset = decode(value);
+            datasets.put(did, dataset);
+        }
+        return dataset;
+    }
+
+    /**
+     * Writes the record of a dataset. A record that was read from the key of not yet migrated records
+     * is moved to the dataset key.
+     */
+    void putDataset(final Dataset dataset) {
+        long start = System.nanoTime();
+        byte[] value = DatasetCodec.encode(dataset);
+        metrics.serialization(System.nanoTime() - start);
+
+        byte[] legacyValue = values.get(dataset.getDid());
+        if (legacyValue != null && legacyValue.length > 0) {
+            delState(dataset.getDid());
+        }
+        putState(DatasetManagement.datasetKey(dataset.getDid()), value);
+        datasets.put(dataset.getDid(), dataset);
+    }
+
+    /**
+     * Decodes a stored dataset record, e.g. one returned by a range query.
+     */
+    Dataset decode(final byte[] value) {
+        long start = System.nanoTime();
+        Dataset dataset = DatasetCodec.decode(value);
+        metrics.serialization(System.nanoTime() - start);
+        return dataset;
+    }
+
+    /**
+     * Renders a stored dataset record as JSON, see {@link DatasetCodec#toJson(byte[])}.
+     */
+    String toJson(final byte[] value) {
+        long start = System.nanoTime();
+        String json = DatasetCodec.toJson(value);
+        metrics.serialization(System.nanoTime() - start);
+        return json;
+    }
+
+    QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        metrics.rangeQuery();
+        return counting(stub.getStateByRange(startKey, endKey));
+    }
+
+    QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+            final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        metrics.rangeQuery();
+        return counting(stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark));
+    }
+
+    QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+            final String objectType, final String... attributes) {
+        metrics.rangeQuery();
+        return counting(stub.getStateByPartialCompositeKey(objectType, attributes));
+    }
+
+    QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        metrics.rangeQuery();
+        return counting(stub.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark));
+    }
+
+    /**
+     * The records of the history are not counted, as they are not key-value pairs.
+     */
+    QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        metrics.rangeQuery();
+        return stub.getHistoryForKey(key);
+    }
+
+    private QueryResultsIterator<KeyValue> counting(final QueryResultsIterator<KeyValue> results) {
+        return results == null ? null : new CountingResults(results, null);
+    }
+
+    private QueryResultsIteratorWithMetadata<KeyValue> counting(
+            final QueryResultsIteratorWithMetadata<KeyValue> results) {
+        return results == null ? null : new CountingResults(results, results);
+    }
+
+    /**
+     * Counts the records and bytes a range query returns to the chaincode.
+     */
+    private final class CountingResults
+            implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final Iterable<KeyValue> results;
+
+        private final QueryResultsIteratorWithMetadata<KeyValue> withMetadata;
+
+        CountingResults(final Iterable<KeyValue> results,
+                final QueryResultsIteratorWithMetadata<KeyValue> withMetadata) {
+            this.results = results;
+            this.withMetadata = withMetadata;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return withMetadata.getMetadata();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            Iterator<KeyValue> iterator = results.iterator();
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public KeyValue next() {
+                    KeyValue result = iterator.next();
+                    metrics.recordScanned(result.getValue());
+                    return result;
+                }
+            };
+        }
+
+        /**
+         * The shim declares any exception, but only fails when the peer does not answer, which is not
+         * something a caller can recover from.
+         */
+        @Override
+        public void close() {
+            try {
+                ((AutoCloseable) results).close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not close query results", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Test;
+
+public final class AsyncLogHandlerTest {
+
+    private static final class CollectingHandler extends Handler {
+
+        private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+
+        private final CountDownLatch released;
+
+        CollectingHandler(final CountDownLatch released) {
+            this.released = released;
+        }
+
+        @Override
+        public void publish(final LogRecord record) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+            // nothing buffered
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    @Test
+    public void publishesRecordsInOrder() {
+        CollectingHandler delegate = new CollectingHandler(new CountDownLatch(0));
+        AsyncLogHandler handler = new AsyncLogHandler(delegate, 16);
+
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        handler.publish(new LogRecord(Level.INFO, "second"));
+        handler.close();
+
+        assertThat(delegate.records).extracting(LogRecord::getMessage).containsExactly("first", "second");
+    }
+
+    @Test
+    public void dropsRecordsWhenBufferIsFull() throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(1);
+        CollectingHandler delegate = new CollectingHandler(released);
+        AsyncLogHandler handler = new AsyncLogHandler(delegate, 1);
+
+        for (int i = 0; i < 10; i++) {
+            handler.publish(new LogRecord(Level.INFO, "record " + i));
+            Thread.sleep(10);
+        }
+
+        assertThat(handler.getDroppedRecords()).isPositive();
+
+        released.countDown();
+        handler.close();
+
+        assertThat(delegate.records).extracting(LogRecord::getMessage)
+                .contains("record 0", "Log buffer full, dropped {0} records");
+    }
+
+    @Test
+    public void mapsFabricLevelNames() {
+        assertThat(ChaincodeConfig.parseLevel("debug")).isEqualTo(Level.FINE);
+        assertThat(ChaincodeConfig.parseLevel("WARNING")).isEqualTo(Level.WARNING);
+        assertThat(ChaincodeConfig.parseLevel("ERROR")).isEqualTo(Level.SEVERE);
+        assertThat(ChaincodeConfig.parseLevel("verbose")).isNull();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+
+public final class CanonicalJsonTest {
+
+    private static String number(final double value) {
+        StringBuilder out = new StringBuilder();
+        CanonicalJson.appendNumber(out, value);
+        return out.toString();
+    }
+
+    @Test
+    public void sortsKeysAndRemovesWhitespace() {
+        assertThat(CanonicalJson.canonicalize("{ \"b\" : [ 1 , { \"d\":true, \"c\":null } ], \"a\":\"x\" }"))
+                .isEqualTo("{\"a\":\"x\",\"b\":[1,{\"c\":null,\"d\":true}]}");
+        assertThat(CanonicalJson.canonicalize("{\"a\":{},\"b\":[]}")).isEqualTo("{\"a\":{},\"b\":[]}");
+    }
+
+    @Test
+    public void sortsKeysByUtf16CodeUnits() {
+        // RFC 8785, section 3.2.3
+        String json = "{\"\\u20ac\":\"Euro Sign\",\"\\r\":\"Carriage Return\",\"\\ufb33\":\"Hebrew Letter Dalet With Dagesh\","
+                + "\"1\":\"One\",\"\\ud83d\\ude00\":\"Emoji: Grinning Face\",\"\\u0080\":\"Control\","
+                + "\"\\u00f6\":\"Latin Small Letter O With Diaeresis\"}";
+
+        assertThat(CanonicalJson.canonicalize(json)).isEqualTo("{\"\\r\":\"Carriage Return\",\"1\":\"One\","
+                + "\"\u0080\":\"Control\",\"\u00f6\":\"Latin Small Letter O With Diaeresis\",\"\u20ac\":\"Euro Sign\","
+                + "\"\ud83d\ude00\":\"Emoji: Grinning Face\",\"\ufb33\":\"Hebrew Letter Dalet With Dagesh\"}");
+    }
+
+    @Test
+    public void escapesStrings() {
+        assertThat(CanonicalJson.canonicalize("[\"\\u0041\\/\\u001f\\t\\\"\\\\\\u00e9\",\"<\\/>\"]"))
+                .isEqualTo("[\"A/\\u001f\\t\\\"\\\\\u00e9\",\"</>\"]");
+    }
+
+    @Test
+    public void writesNumbersLikeEcmaScript() {
+        assertThat(CanonicalJson.canonicalize("[56,-0,1E30,4.50,2e-3,0.000000000000000000000000001,-1.0e+2]"))
+                .isEqualTo("[56,0,1e+30,4.5,0.002,1e-27,-100]");
+        assertThat(number(333333333.33333329)).isEqualTo("333333333.3333333");
+        assertThat(number(1e21)).isEqualTo("1e+21");
+        assertThat(number(1e20)).isEqualTo("100000000000000000000");
+        assertThat(number(1e-6)).isEqualTo("0.000001");
+        assertThat(number(1e-7)).isEqualTo("1e-7");
+        assertThat(number(-5e-324)).isEqualTo("-5e-324");
+        assertThat(number(1.7976931348623157e308)).isEqualTo("1.7976931348623157e+308");
+    }
+
+    @Test
+    public void rejectsInvalidDocuments() {
+        assertThat(catchThrowable(() -> CanonicalJson.canonicalize("{\"b\":1,\"a\":2,\"b\":3}")))
+                .isInstanceOf(JSONException.class).hasMessage("Duplicate key \"b\"");
+        assertThat(catchThrowable(() -> CanonicalJson.canonicalize("{\"a\":1,\"a\":2}")))
+                .isInstanceOf(JSONException.class).hasMessage("Duplicate key \"a\"");
+        assertThat(catchThrowable(() -> CanonicalJson.canonicalize("[1e400]")))
+                .isInstanceOf(JSONException.class).hasMessage("Number 1e400 is out of range");
+        assertThat(catchThrowable(() -> CanonicalJson.canonicalize("{\"a\":1} x")))
+                .isInstanceOf(JSONException.class);
+    }
+}
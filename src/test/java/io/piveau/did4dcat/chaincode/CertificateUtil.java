@@ -39,6 +39,22 @@ final class CertificateUtil {
         + "YWxob3N0MAoGCCqGSM49BAMCA0gAMEUCIQC9K2817CKFDjMacV5f7Pvlbk81c6Z6"
         + "a+laHQnVbClkTAIgMYpxNsBi6Ho1IC6lXxK7mYLL8yx1uo0fXp8bm1rxp1I=";
 
+    /**
+     * Certificate of the client "admin" with the Fabric CA attribute hf.Type=admin.
+     */
+    private static final String ADMIN_CERTIFICATE =
+        "MIIB4zCCAYqgAwIBAgIURUKpX/wRsLbJ8jK3hxeTANkIwKUwCgYIKoZIzj0EAwIw"
+        + "ITEPMA0GA1UECwwGY2xpZW50MQ4wDAYDVQQDDAVhZG1pbjAgFw0yNjEwMTcwNzIy"
+        + "NDRaGA8yMTI2MDkyMzA3MjI0NFowITEPMA0GA1UECwwGY2xpZW50MQ4wDAYDVQQD"
+        + "DAVhZG1pbjBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABNQWzB0NQUlaD+cOcrQ2"
+        + "4ipRDxFgmYtnNJy9uMeIw7M0BbGvOCpdfXSt6wOZC4ISefPZqKgqtm1U0ejrAW7C"
+        + "GryjgZ0wgZowDgYDVR0PAQH/BAQDAgeAMAwGA1UdEwEB/wQCMAAwWwYIKgMEBQYH"
+        + "CAEET3siYXR0cnMiOnsiaGYuQWZmaWxpYXRpb24iOiJvcmcxIiwiaGYuRW5yb2xs"
+        + "bWVudElEIjoiYWRtaW4iLCJoZi5UeXBlIjoiYWRtaW4ifX0wHQYDVR0OBBYEFNje"
+        + "4bRTiLoSprN0+8Pkrv1PhwEBMAoGCCqGSM49BAMCA0cAMEQCIE4rPkW++ZZNb9Ev"
+        + "l5K1Kb5qcMeErs6ALi3w9Ai9LITRAiBsVJF5ykxu9izyYgv5PoRF7wsgYvvtqWya"
+        + "9jtjb6MiVg==";
+
     static byte[] buildSerializedIdentity(final String certificate) {
         final SerializedIdentity.Builder identity = SerializedIdentity.newBuilder();
         identity.setMspid("Glass01MSP");
@@ -52,6 +68,10 @@ final class CertificateUtil {
         return buildSerializedIdentity(VALID_CERTIFICATE);
     }
 
+    static byte[] getAdminCreator() {
+        return buildSerializedIdentity(ADMIN_CERTIFICATE);
+    }
+
     static byte[] getInvalidCreator() {
         return buildSerializedIdentity(INVALID_CERTIFICATE);
     }
@@ -0,0 +1,57 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public final class ChaincodeMetricsTest {
+
+    private TransactionMetrics transaction(final int reads, final int scanned, final int returned) {
+        TransactionMetrics metrics = new TransactionMetrics();
+        metrics.start();
+        for (int i = 0; i < reads; i++) {
+            metrics.stateRead(new byte[100]);
+        }
+        metrics.rangeQuery();
+        for (int i = 0; i < scanned; i++) {
+            metrics.recordScanned(new byte[10]);
+        }
+        metrics.recordsReturned(returned);
+        metrics.stateWritten(50);
+        return metrics;
+    }
+
+    @Test
+    public void aggregatesPerTransaction() {
+        ChaincodeMetrics metrics = new ChaincodeMetrics();
+
+        metrics.record("GetMyDatasets", transaction(3, 10, 3));
+        metrics.record("GetMyDatasets", transaction(2, 5, 2));
+        metrics.record("CreateDataset", transaction(1, 0, 0));
+        metrics.recordFailure("CreateDataset");
+        metrics.recordFailure("ReadDataset");
+
+        assertThat(metrics.count("GetMyDatasets")).isEqualTo(2);
+        assertThat(metrics.count("ReadDataset")).isZero();
+        assertThat(metrics.failures("ReadDataset")).isEqualTo(1);
+        assertThat(metrics.failures("GetMyDatasets")).isZero();
+
+        String text = metrics.toPrometheus();
+        assertThat(text)
+                .contains("# TYPE did4dcat_transaction_duration_seconds histogram\n")
+                .contains("did4dcat_transaction_duration_seconds_bucket{transaction=\"GetMyDatasets\",le=\"+Inf\"} 2\n")
+                .contains("did4dcat_transaction_duration_seconds_count{transaction=\"CreateDataset\"} 1\n")
+                .contains("did4dcat_transaction_failures_total{transaction=\"CreateDataset\"} 1\n")
+                .contains("did4dcat_transaction_failures_total{transaction=\"GetMyDatasets\"} 0\n")
+                .contains("did4dcat_state_reads_total{transaction=\"GetMyDatasets\"} 5\n")
+                .contains("did4dcat_records_scanned_total{transaction=\"GetMyDatasets\"} 15\n")
+                .contains("did4dcat_records_returned_total{transaction=\"GetMyDatasets\"} 5\n")
+                .contains("did4dcat_state_read_bytes_total{transaction=\"GetMyDatasets\"} 650\n")
+                .contains("did4dcat_state_written_bytes_total{transaction=\"CreateDataset\"} 50\n")
+                .contains("did4dcat_range_queries_total{transaction=\"CreateDataset\"} 1\n");
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.owlike.genson.Genson;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class DatasetCodecTest {
+
+    private final Genson genson = new Genson();
+
+    private final JSONObject didDocument = new JSONObject()
+            .put("@context", new JSONArray().put("https://www.w3.org/ns/did/v1").put("https://did4dcat.org/context/v1"))
+            .put("id", "did:dcat:dataset:123456")
+            .put("controller", "did:dcat:provider:example-provider")
+            .put("@url", new JSONObject().put("@id", "http://data.europa.eu/88u/dataset/europeana-aggregated-dataset.rdf"))
+            .put("issued", "2022-09-19T18:05:20.997")
+            .put("modified", "2022-09-20T20:05:20.997")
+            .put("hash", new JSONObject().put("value", "f4389t356t7zw457zn547zw4").put("alg", "URDNA2015"));
+
+    private final Dataset dataset = new Dataset("did:dcat:dataset:123456", didDocument.toString(),
+            new DatasetOwner("user", "Glass01MSP"));
+
+    @Test
+    public void roundTripsBinaryRecords() {
+        byte[] record = DatasetCodec.encode(dataset);
+
+        assertThat(DatasetCodec.isBinary(record)).isTrue();
+        assertThat(record[1]).isEqualTo(DatasetCodec.VERSION);
+
+        Dataset decoded = DatasetCodec.decode(record);
+        assertThat(decoded).isEqualTo(dataset);
+        assertThat(decoded.getDidDocument()).isEqualTo(dataset.getDidDocument());
+        assertThat(decoded.getOwner()).isEqualTo(dataset.getOwner());
+    }
+
+    @Test
+    public void isSmallerThanLegacyJson() {
+        assertThat(DatasetCodec.encode(dataset).length).isLessThan(genson.serialize(dataset).getBytes().length);
+    }
+
+    @Test
+    public void decodesLegacyJsonRecords() {
+        byte[] record = genson.serialize(dataset).getBytes();
+
+        assertThat(DatasetCodec.isBinary(record)).isFalse();
+
+        Dataset decoded = DatasetCodec.decode(record);
+        assertThat(decoded).isEqualTo(dataset);
+        assertThat(decoded.getDidDocument()).isEqualTo(dataset.getDidDocument());
+        assertThat(decoded.getOwner()).isEqualTo(dataset.getOwner());
+    }
+
+    @Test
+    public void rendersBinaryRecordsAsLegacyJson() {
+        String legacyJson = genson.serialize(dataset);
+        String json = DatasetCodec.toJson(DatasetCodec.encode(dataset));
+
+        assertThat(new JSONObject(json).similar(new JSONObject(legacyJson))).isTrue();
+    }
+
+    @Test
+    public void rendersAbsentFieldsAsNull() {
+        Dataset withoutUser = new Dataset(dataset.getDid(), dataset.getDidDocument(),
+                new DatasetOwner(null, "Glass01MSP"));
+
+        assertThat(DatasetCodec.toJson(DatasetCodec.encode(withoutUser))).isEqualTo(genson.serialize(withoutUser));
+    }
+
+    @Test
+    public void passesLegacyJsonThrough() {
+        String legacyJson = genson.serialize(dataset);
+
+        assertThat(DatasetCodec.toJson(legacyJson.getBytes())).isEqualTo(legacyJson);
+    }
+
+    @Test
+    public void compressesDocumentsAboveThreshold() {
+        JSONObject largeDocument = new JSONObject(didDocument.toString());
+        JSONArray services = new JSONArray();
+        for (int i = 0; i < 100; i++) {
+            services.put(new JSONObject().put("id", "did:dcat:dataset:123456#service-" + i)
+                    .put("type", "DistributionService")
+                    .put("serviceEndpoint", "http://data.europa.eu/88u/distribution/" + i));
+        }
+        largeDocument.put("service", services);
+        Dataset largeDataset = new Dataset("did:dcat:dataset:123456", largeDocument.toString(),
+                new DatasetOwner("user", "Glass01MSP"));
+
+        byte[] uncompressed = DatasetCodec.encode(largeDataset, 0);
+        byte[] compressed = DatasetCodec.encode(largeDataset, 1024);
+
+        assertThat(DatasetCodec.compressedDocumentSize(uncompressed)).isEqualTo(-1);
+        assertThat(DatasetCodec.compressedDocumentSize(compressed)).isPositive();
+        assertThat(uncompressed[1]).isEqualTo(DatasetCodec.VERSION);
+        assertThat(compressed[1]).isEqualTo(DatasetCodec.COMPRESSED_VERSION);
+        assertThat(compressed.length).isLessThan(uncompressed.length / 4);
+        assertThat(DatasetCodec.decode(compressed).getDidDocument()).isEqualTo(largeDocument.toString());
+        assertThat(DatasetCodec.encode(largeDataset, 1024)).isEqualTo(compressed);
+        assertThat(DatasetCodec.encode(largeDataset)).isEqualTo(compressed);
+    }
+
+    @Test
+    public void keepsDocumentsBelowThresholdUncompressed() {
+        byte[] record = DatasetCodec.encode(dataset, 1024);
+
+        assertThat(DatasetCodec.compressedDocumentSize(record)).isEqualTo(-1);
+        assertThat(DatasetCodec.decode(record).getDidDocument()).isEqualTo(dataset.getDidDocument());
+    }
+}
@@ -6,27 +6,41 @@ package io.piveau.did4dcat.chaincode;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.ThrowableAssert.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.security.cert.CertificateException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 public final class DatasetManagementTest {
 
@@ -45,9 +59,13 @@ public final class DatasetManagementTest {
     private final class MockKeyValue implements KeyValue {
 
         private final String key;
-        private final String value;
+        private final byte[] value;
 
         MockKeyValue(final String key, final String value) {
+            this(key, value.getBytes());
+        }
+
+        MockKeyValue(final String key, final byte[] value) {
             super();
             this.key = key;
             this.value = value;
@@ -60,12 +78,12 @@ public final class DatasetManagementTest {
 
         @Override
         public String getStringValue() {
-            return this.value;
+            return new String(this.value);
         }
 
         @Override
         public byte[] getValue() {
-            return this.value.getBytes();
+            return this.value;
         }
 
     }
@@ -124,6 +142,156 @@ public final class DatasetManagementTest {
 
     }
 
+    private final class MockResultsIterator implements QueryResultsIterator<KeyValue> {
+
+        private final List<KeyValue> results;
+
+        MockResultsIterator(final KeyValue... results) {
+            super();
+            this.results = Arrays.asList(results);
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
+    private final class MockPagedResultsIterator implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> results;
+
+        private final String bookmark;
+
+        MockPagedResultsIterator(final String bookmark, final KeyValue... results) {
+            super();
+            this.bookmark = bookmark;
+            this.results = Arrays.asList(results);
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder()
+                    .setBookmark(bookmark)
+                    .setFetchedRecordsCount(results.size())
+                    .build();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
+    private static void asAdministrator(final Context ctx, final ChaincodeStub stub)
+            throws CertificateException, IOException {
+        when(stub.getCreator()).thenReturn(CertificateUtil.getAdminCreator());
+        ClientIdentity clientIdentity = new ClientIdentity(stub);
+        when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+    }
+
+    private KeyValue ownerIndexEntry(final String userId, final String did) {
+        String key = new CompositeKey(DatasetManagement.OWNER_INDEX, "Glass01MSP", userId, did).toString();
+        return new MockKeyValue(key, DatasetManagement.INDEX_VALUE);
+    }
+
+    private String storedDataset(final String did, final String userId) {
+        JSONObject document = new JSONObject(didDocument.toString()).put("id", did);
+        return new JSONObject()
+                .put("did", did)
+                .put("owner", new JSONObject().put("userId", userId).put("mspId", "Glass01MSP"))
+                .put("didDocument", document.toString()).toString();
+    }
+
+    @Test
+    public void createsDatasetContext() throws CertificateException, IOException {
+        DatasetManagement contract = new DatasetManagement();
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+
+        Context ctx = contract.createContext(stub);
+
+        assertThat(ctx).isInstanceOf(DatasetContext.class);
+        assertThat(DatasetContext.stateOf(ctx)).isSameAs(DatasetContext.stateOf(ctx));
+    }
+
+    @Test
+    public void resolvesOwnerOncePerCertificate() throws CertificateException, IOException {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+
+        DatasetOwner first = DatasetManagement.convertClientIdentityToOwner(new ClientIdentity(stub));
+        DatasetOwner second = DatasetManagement.convertClientIdentityToOwner(new ClientIdentity(stub));
+
+        assertThat(first).isEqualTo(new DatasetOwner("user", "Glass01MSP"));
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void recordsTransactionMetrics() throws CertificateException, IOException {
+        DatasetManagement contract = new DatasetManagement();
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+        when(stub.getFunction()).thenReturn("did4dcat:ReadDataset");
+        when(stub.getState("did:dcat:dataset:123456"))
+                .thenReturn(storedDataset("did:dcat:dataset:123456", "user").getBytes());
+
+        Context ctx = contract.createContext(stub);
+        contract.beforeTransaction(ctx);
+        contract.afterTransaction(ctx, contract.ReadDataset(ctx, "did:dcat:dataset:123456"));
+
+        assertThat(contract.GetMetrics(contract.createContext(stub)))
+                .contains("did4dcat_transaction_duration_seconds_count{transaction=\"ReadDataset\"}")
+                .contains("did4dcat_state_reads_total{transaction=\"ReadDataset\"}")
+                .contains("did4dcat_records_returned_total{transaction=\"ReadDataset\"}");
+    }
+
+    @Test
+    public void recordsFailedTransactions() throws CertificateException, IOException {
+        DatasetManagement contract = new DatasetManagement();
+
+        Context rejected = contract.createContext(transactionStub("ReadDataset"));
+        contract.beforeTransaction(rejected);
+        Throwable thrown = catchThrowable(() -> contract.ReadDataset(rejected, "did:dcat:dataset:123456"));
+        assertThat(thrown).isInstanceOf(ChaincodeException.class);
+
+        ChaincodeStub unavailable = transactionStub("GetAllDatasets");
+        when(unavailable.getStateByRange(any(), any())).thenThrow(new IllegalStateException("unavailable"));
+        Context failed = contract.createContext(unavailable);
+        contract.beforeTransaction(failed);
+        thrown = catchThrowable(() -> contract.GetAllDatasets(failed));
+        assertThat(thrown).isInstanceOf(IllegalStateException.class);
+
+        Context next = contract.createContext(transactionStub("GetMetrics"));
+        contract.beforeTransaction(next);
+        String metrics = contract.GetMetrics(next);
+        contract.afterTransaction(next, metrics);
+
+        assertThat(metrics)
+                .contains("did4dcat_transaction_failures_total{transaction=\"ReadDataset\"} 1\n")
+                .contains("did4dcat_transaction_failures_total{transaction=\"GetAllDatasets\"} 1\n")
+                .doesNotContain("did4dcat_transaction_failures_total{transaction=\"GetMetrics\"}");
+    }
+
+    private ChaincodeStub transactionStub(final String transaction) throws CertificateException, IOException {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+        when(stub.getFunction()).thenReturn("did4dcat:" + transaction);
+        return stub;
+    }
+
     @Test
     public void invokeUnknownTransaction() {
         DatasetManagement contract = new DatasetManagement();
@@ -149,7 +317,7 @@ public final class DatasetManagementTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStateByRange("", "")).thenReturn(new MockAssetResultsIterator());
+            when(stub.getStateByRange("dataset:", "dataset;")).thenReturn(new MockAssetResultsIterator());
 
             String response = contract.GetAllDatasets(ctx);
             JSONArray result = new JSONArray(response);
@@ -161,6 +329,22 @@ public final class DatasetManagementTest {
 
         }
 
+        @Test
+        public void getAllDatasetsPassesStoredRecordsThrough() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            String first = storedDataset("did:dcat:dataset:111111", "user1");
+            String second = storedDataset("did:dcat:dataset:222222", "user2");
+            when(stub.getStateByRange("dataset:", "dataset;")).thenReturn(new MockResultsIterator(
+                    new MockKeyValue("dataset:did:dcat:dataset:111111", first)));
+            when(stub.getStateByRange("did:", "did;")).thenReturn(new MockResultsIterator(
+                    new MockKeyValue("did:dcat:dataset:222222", second)));
+
+            assertThat(contract.GetAllDatasets(ctx)).isEqualTo("[" + first + "," + second + "]");
+        }
+
         @Test
         public void getMyDatasets() throws CertificateException, IOException {
             DatasetManagement contract = new DatasetManagement();
@@ -169,15 +353,441 @@ public final class DatasetManagementTest {
             ChaincodeStub stub = mock(ChaincodeStub.class);
 
             when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
-            when(stub.getStateByRange("", "")).thenReturn(new MockAssetResultsIterator());
+            when(stub.getStateByPartialCompositeKey(DatasetManagement.OWNER_INDEX, "Glass01MSP", "user"))
+                    .thenReturn(new MockResultsIterator(
+                            ownerIndexEntry("user", "did:dcat:dataset:555555"),
+                            ownerIndexEntry("user", "did:dcat:dataset:666666")));
+            when(stub.getState("did:dcat:dataset:555555"))
+                    .thenReturn(storedDataset("did:dcat:dataset:555555", "user").getBytes());
+            when(stub.getState("did:dcat:dataset:666666"))
+                    .thenReturn(storedDataset("did:dcat:dataset:666666", "user").getBytes());
             ClientIdentity clientIdentity = new ClientIdentity(stub);
-            DatasetOwner owner = DatasetManagement.convertClientIdentityToOwner(clientIdentity);
             when(ctx.getClientIdentity()).thenReturn(clientIdentity);
             when(ctx.getStub()).thenReturn(stub);
 
             JSONArray result = new JSONArray(contract.GetMyDatasets(ctx));
-            assertThat(result.length()).isEqualTo(1);
+            assertThat(result.length()).isEqualTo(2);
             assertThat(result.getJSONObject(0).get("did")).isEqualTo("did:dcat:dataset:555555");
+            assertThat(result.getJSONObject(1).get("did")).isEqualTo("did:dcat:dataset:666666");
+        }
+
+    }
+
+    @Nested
+    class InvokePaginatedQueryTransactions {
+
+        @Test
+        public void getAllDatasetsWithPagination() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByRangeWithPagination("dataset:", "dataset;", 2, "")).thenReturn(new MockPagedResultsIterator(
+                    "dataset:did:dcat:dataset:333333",
+                    new MockKeyValue("did:dcat:dataset:111111", storedDataset("did:dcat:dataset:111111", "user1")),
+                    new MockKeyValue("did:dcat:dataset:222222", storedDataset("did:dcat:dataset:222222", "user2"))));
+
+            JSONObject page = new JSONObject(contract.GetAllDatasetsWithPagination(ctx, 2, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(2);
+            assertThat(page.getJSONArray("records").getJSONObject(1).get("did")).isEqualTo("did:dcat:dataset:222222");
+            assertThat(page.getString("bookmark")).isEqualTo("dataset:did:dcat:dataset:333333");
+            assertThat(page.getInt("fetchedCount")).isEqualTo(2);
+        }
+
+        @Test
+        public void getAllDatasetsWithPaginationContinuesWithLegacyRecords() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByRangeWithPagination("dataset:", "dataset;", 3, "")).thenReturn(new MockPagedResultsIterator(
+                    "", new MockKeyValue("dataset:did:dcat:dataset:111111",
+                            storedDataset("did:dcat:dataset:111111", "user1"))));
+            when(stub.getStateByRangeWithPagination("did:", "did;", 2, "")).thenReturn(new MockPagedResultsIterator(
+                    "did:dcat:dataset:444444",
+                    new MockKeyValue("did:dcat:dataset:222222", storedDataset("did:dcat:dataset:222222", "user2")),
+                    new MockKeyValue("did:dcat:dataset:333333", storedDataset("did:dcat:dataset:333333", "user3"))));
+            when(stub.getStateByRangeWithPagination("did:", "did;", 3, "did:dcat:dataset:444444")).thenReturn(
+                    new MockPagedResultsIterator("", new MockKeyValue("did:dcat:dataset:444444",
+                            storedDataset("did:dcat:dataset:444444", "user4"))));
+
+            JSONObject page = new JSONObject(contract.GetAllDatasetsWithPagination(ctx, 3, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(3);
+            assertThat(page.getJSONArray("records").getJSONObject(2).get("did")).isEqualTo("did:dcat:dataset:333333");
+            assertThat(page.getString("bookmark")).isEqualTo("did:dcat:dataset:444444");
+            assertThat(page.getInt("fetchedCount")).isEqualTo(3);
+
+            page = new JSONObject(contract.GetAllDatasetsWithPagination(ctx, 3, page.getString("bookmark")));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getString("bookmark")).isEmpty();
+            verify(stub, times(1)).getStateByRangeWithPagination(eq("dataset:"), any(), anyInt(), any());
+        }
+
+        @Test
+        public void getMyDatasetsWithPagination() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(1), eq("")))
+                    .thenReturn(new MockPagedResultsIterator("next",
+                            ownerIndexEntry("user", "did:dcat:dataset:555555")));
+            when(stub.getState("did:dcat:dataset:555555"))
+                    .thenReturn(storedDataset("did:dcat:dataset:555555", "user").getBytes());
+
+            JSONObject page = new JSONObject(contract.GetMyDatasetsWithPagination(ctx, 1, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getJSONArray("records").getJSONObject(0).get("did")).isEqualTo("did:dcat:dataset:555555");
+            assertThat(page.getString("bookmark")).isEqualTo("next");
+        }
+
+        @Test
+        public void getSummariesWithPagination() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(ctx.getStub()).thenReturn(stub);
+
+            String summary = DatasetSummary.toJson(new Dataset("did:dcat:dataset:555555", didDocument.toString(),
+                    new DatasetOwner("user", "Glass01MSP")), DidDocumentFields.scan(didDocument.toString()));
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(2), eq("")))
+                    .thenReturn(new MockPagedResultsIterator("",
+                            new MockKeyValue(DatasetSummary.key("did:dcat:dataset:555555"), summary)))
+                    .thenReturn(new MockPagedResultsIterator("",
+                            ownerIndexEntry("user", "did:dcat:dataset:555555"),
+                            ownerIndexEntry("user", "did:dcat:dataset:666666")));
+            when(stub.getState(DatasetSummary.key("did:dcat:dataset:555555"))).thenReturn(summary.getBytes());
+
+            JSONObject page = new JSONObject(contract.GetAllDatasetSummaries(ctx, 2, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getJSONArray("records").getJSONObject(0).getString("modified"))
+                    .isEqualTo("2022-09-20T20:05:20.997");
+            assertThat(page.getJSONArray("records").getJSONObject(0).has("didDocument")).isFalse();
+
+            page = new JSONObject(contract.GetMyDatasetSummaries(ctx, 2, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getJSONArray("records").getJSONObject(0).getString("did")).isEqualTo("did:dcat:dataset:555555");
+            verify(stub, times(0)).getState("did:dcat:dataset:555555");
+
+            String withoutUser = DatasetSummary.toJson(new Dataset("did:dcat:dataset:555555", didDocument.toString(),
+                    new DatasetOwner(null, "Glass01MSP")), DidDocumentFields.scan(didDocument.toString()));
+            assertThat(new JSONObject(withoutUser).getJSONObject("owner").isNull("userId")).isTrue();
+        }
+
+        @Test
+        public void getDatasetsByController() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            String controller = "did:dcat:provider:example-provider";
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(2), eq("")))
+                    .thenReturn(new MockPagedResultsIterator("next",
+                            new MockKeyValue(DatasetManagement.controllerIndexKey(controller, "did:dcat:dataset:111111"),
+                                    DatasetManagement.INDEX_VALUE),
+                            new MockKeyValue(DatasetManagement.controllerIndexKey(controller, "did:dcat:dataset:222222"),
+                                    DatasetManagement.INDEX_VALUE)));
+            when(stub.getState("did:dcat:dataset:111111"))
+                    .thenReturn(storedDataset("did:dcat:dataset:111111", "user1").getBytes());
+
+            JSONObject page = new JSONObject(contract.GetDatasetsByController(ctx, controller, 2, ""));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getJSONArray("records").getJSONObject(0).get("did")).isEqualTo("did:dcat:dataset:111111");
+            assertThat(page.getString("bookmark")).isEqualTo("next");
+
+            ArgumentCaptor<CompositeKey> key = ArgumentCaptor.forClass(CompositeKey.class);
+            verify(stub).getStateByPartialCompositeKeyWithPagination(key.capture(), eq(2), eq(""));
+            assertThat(key.getValue().toString())
+                    .isEqualTo(new CompositeKey(DatasetManagement.CONTROLLER_INDEX, controller).toString());
+        }
+
+        @Test
+        public void rejectInvalidCursor() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetChangesSince(ctx, "did:dcat:dataset:123456", 10);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Invalid cursor did:dcat:dataset:123456");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+        }
+
+        @Test
+        public void rejectInvalidPageSize() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetAllDatasetsWithPagination(ctx, 0, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Page size must be between 1 and 1000");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+        }
+
+    }
+
+    @Nested
+    class InvokeGetCompressionStatisticsTransaction {
+
+        @Test
+        public void reportsCompressionRatio() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            JSONObject largeDocument = new JSONObject(didDocument.toString())
+                    .put("description", String.join(" ", Collections.nCopies(500, "dataset")));
+            byte[] compressed = DatasetCodec.encode(new Dataset("did:dcat:dataset:111111", largeDocument.toString(),
+                    new DatasetOwner("user", "Glass01MSP")), 1024);
+            when(stub.getStateByRange("dataset:", "dataset;")).thenReturn(new MockResultsIterator(
+                    new MockKeyValue("dataset:did:dcat:dataset:111111", compressed)));
+            when(stub.getStateByRange("did:", "did;")).thenReturn(new MockResultsIterator(
+                    new MockKeyValue("did:dcat:dataset:222222", storedDataset("did:dcat:dataset:222222", "user"))));
+
+            JSONObject statistics = new JSONObject(contract.GetCompressionStatistics(ctx));
+            assertThat(statistics.getLong("records")).isEqualTo(2);
+            assertThat(statistics.getLong("compressedRecords")).isEqualTo(1);
+            assertThat(statistics.getDouble("compressionRatio")).isGreaterThan(10.0);
+        }
+
+    }
+
+    @Nested
+    class InvokeGetDatasetHistoryTransaction {
+
+        private KeyModification modification(final String txId, final byte[] value, final boolean deleted) {
+            KeyModification modification = mock(KeyModification.class);
+            when(modification.getTxId()).thenReturn(txId);
+            when(modification.getTimestamp()).thenReturn(Instant.parse("2022-09-20T20:05:20Z"));
+            when(modification.getValue()).thenReturn(value);
+            when(modification.isDeleted()).thenReturn(deleted);
+            return modification;
+        }
+
+        private int closedHistories;
+
+        private void stubHistory(final ChaincodeStub stub, final String key, final KeyModification... modifications) {
+            stubHistory(stub, key, Arrays.asList(modifications));
+        }
+
+        private void stubHistory(final ChaincodeStub stub, final String key, final List<KeyModification> history) {
+            when(stub.getHistoryForKey(key)).thenAnswer(invocation ->
+                    new QueryResultsIterator<KeyModification>() {
+                        @Override
+                        public Iterator<KeyModification> iterator() {
+                            return history.iterator();
+                        }
+
+                        @Override
+                        public void close() {
+                            closedHistories++;
+                        }
+                    });
+        }
+
+        private Context contextWithHistory() {
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            byte[] encoded = DatasetCodec.encode(new Dataset("did:dcat:dataset:123456", didDocument.toString(),
+                    new DatasetOwner("user", "Glass01MSP")));
+            stubHistory(stub, "dataset:did:dcat:dataset:123456",
+                    modification("tx3", new byte[0], true),
+                    modification("tx2", encoded, false),
+                    modification("tx1", storedDataset("did:dcat:dataset:123456", "user").getBytes(), false));
+            return ctx;
+        }
+
+        @Test
+        public void continuesWithHistoryOfMigratedRecord() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            byte[] encoded = DatasetCodec.encode(new Dataset("did:dcat:dataset:123456", didDocument.toString(),
+                    new DatasetOwner("user", "Glass01MSP")));
+            stubHistory(stub, "dataset:did:dcat:dataset:123456",
+                    modification("tx5", encoded, false),
+                    modification("tx4", encoded, false));
+            stubHistory(stub, "did:dcat:dataset:123456",
+                    modification("tx4", new byte[0], true),
+                    modification("tx2", encoded, false),
+                    modification("tx1", storedDataset("did:dcat:dataset:123456", "user").getBytes(), false));
+
+            JSONObject page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 3, "", true));
+            JSONArray records = page.getJSONArray("records");
+            assertThat(records.length()).isEqualTo(3);
+            assertThat(records.getJSONObject(1).getString("txId")).isEqualTo("tx4");
+            assertThat(records.getJSONObject(1).getBoolean("isDelete")).isFalse();
+            assertThat(records.getJSONObject(2).getString("txId")).isEqualTo("tx2");
+            assertThat(page.getString("bookmark")).isEqualTo("tx1");
+
+            page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 3, "tx1", true));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+            assertThat(page.getString("bookmark")).isEmpty();
+
+            page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 2, "", true));
+            assertThat(page.getString("bookmark")).isEqualTo("tx2");
+
+            page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 1, "", true));
+            assertThat(page.getString("bookmark")).isEqualTo("tx4");
+            verify(stub, times(3)).getHistoryForKey("did:dcat:dataset:123456");
+            assertThat(closedHistories).isEqualTo(7);
+        }
+
+        @Test
+        public void rejectBookmarksBeyondMaximumDepth() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            List<KeyModification> history = new ArrayList<>(Collections.nCopies(DatasetManagement.MAX_HISTORY_DEPTH,
+                    modification("tx2", new byte[0], false)));
+            history.add(modification("tx1", new byte[0], false));
+            stubHistory(stub, "dataset:did:dcat:dataset:123456", history);
+
+            Throwable thrown = catchThrowable(() ->
+                    contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 10, "tx1", true));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Bookmark tx1 is more than 10000 entries deep in the history of dataset "
+                            + "did:dcat:dataset:123456");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+            assertThat(closedHistories).isEqualTo(1);
+
+            history.remove(0);
+            JSONObject page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 10, "tx1",
+                    true));
+            assertThat(page.getJSONArray("records").length()).isEqualTo(1);
+        }
+
+        @Test
+        public void returnsHistoryInPages() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = contextWithHistory();
+
+            JSONObject page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 2, "", false));
+            assertThat(page.getString("bookmark")).isEqualTo("tx1");
+            assertThat(page.getInt("fetchedCount")).isEqualTo(2);
+            JSONArray records = page.getJSONArray("records");
+            assertThat(records.getJSONObject(0).getBoolean("isDelete")).isTrue();
+            assertThat(records.getJSONObject(0).isNull("dataset")).isTrue();
+            assertThat(records.getJSONObject(1).getString("txId")).isEqualTo("tx2");
+            assertThat(records.getJSONObject(1).getString("timestamp")).isEqualTo("2022-09-20T20:05:20Z");
+            assertThat(records.getJSONObject(1).getJSONObject("dataset").getString("did"))
+                    .isEqualTo("did:dcat:dataset:123456");
+
+            page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 2, "tx1", false));
+            assertThat(page.getString("bookmark")).isEmpty();
+            assertThat(page.getJSONArray("records").getJSONObject(0).getJSONObject("dataset")
+                    .getJSONObject("owner").getString("userId")).isEqualTo("user");
+        }
+
+        @Test
+        public void returnsOnlyMetadata() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = contextWithHistory();
+
+            JSONObject page = new JSONObject(contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 10, "", true));
+            JSONArray records = page.getJSONArray("records");
+            assertThat(records.length()).isEqualTo(3);
+            assertThat(records.getJSONObject(1).keySet()).containsExactlyInAnyOrder("txId", "timestamp", "isDelete");
+        }
+
+        @Test
+        public void rejectsUnknownBookmark() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = contextWithHistory();
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetDatasetHistory(ctx, "did:dcat:dataset:123456", 10, "tx9", false);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Bookmark tx9 is not part of the history of dataset did:dcat:dataset:123456");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeBackfillIndexesTransaction {
+
+        @Test
+        public void backfillAllDatasets() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            asAdministrator(ctx, stub);
+            when(stub.getStateByRange("dataset:", "dataset;")).thenReturn(new MockAssetResultsIterator());
+
+            JSONObject result = new JSONObject(contract.BackfillIndexes(ctx, "", 10));
+            assertThat(result.getInt("processed")).isEqualTo(5);
+            assertThat(result.getString("nextStartKey")).isEmpty();
+            verify(stub).putStringState(ownerIndexEntry("user3", "did:dcat:dataset:333333").getKey(),
+                    DatasetManagement.INDEX_VALUE);
+        }
+
+        @Test
+        public void backfillInBatches() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            asAdministrator(ctx, stub);
+            when(stub.getStateByRange("dataset:", "dataset;")).thenReturn(new MockAssetResultsIterator());
+
+            JSONObject result = new JSONObject(contract.BackfillIndexes(ctx, "", 2));
+            assertThat(result.getInt("processed")).isEqualTo(2);
+            assertThat(result.getString("nextStartKey")).isEqualTo("did:dcat:333333");
+        }
+
+        @Test
+        public void rejectStartKeyOutsideOfDatasetRecords() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            asAdministrator(ctx, stub);
+
+            Throwable thrown = catchThrowable(() -> contract.BackfillIndexes(ctx, "did:dcat:333333", 2));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Start key did:dcat:333333 does not start with dataset:");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+        }
+
+        @Test
+        public void rejectUsersOtherThanAdministrators() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+
+            Throwable thrown = catchThrowable(() -> contract.BackfillIndexes(ctx, "", 10));
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("User is not authorized");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("USER_NOT_AUTHORIZED".getBytes());
+            verify(stub, never()).getStateByRange(any(), any());
         }
 
     }
@@ -195,8 +805,8 @@ public final class DatasetManagementTest {
                     .put("did", "did:dcat:dataset:123456")
                     .put("didDocument", didDocument.toString())
                     .put("owner", new JSONObject().put("userId", "user").put("mspId", "Glass01MSP"));
-            when(stub.getStringState("did:dcat:dataset:123456"))
-                    .thenReturn(returnValue.toString());
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(returnValue.toString().getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.CreateDataset(ctx, didDocument.toString());
@@ -218,10 +828,40 @@ public final class DatasetManagementTest {
             when(ctx.getClientIdentity()).thenReturn(clientIdentity);
 
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("did:dcat:dataset:123456")).thenReturn("");
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-09-21T10:00:00Z"));
+            when(stub.getState("did:dcat:dataset:123456")).thenReturn(new byte[0]);
 
             Dataset dataset = contract.CreateDataset(ctx, didDocument.toString());
             assertThat(dataset).isEqualTo(new Dataset("did:dcat:dataset:123456", didDocument.toString(), owner));
+            assertThat(new JSONObject(dataset.getDidDocument()).similar(didDocument)).isTrue();
+            assertThat(CanonicalJson.canonicalize(dataset.getDidDocument())).isEqualTo(dataset.getDidDocument());
+            verify(stub).putState("dataset:did:dcat:dataset:123456", DatasetCodec.encode(dataset));
+            verify(stub).putStringState(ownerIndexEntry("user", "did:dcat:dataset:123456").getKey(),
+                    DatasetManagement.INDEX_VALUE);
+            verify(stub).putStringState(new CompositeKey(DatasetStatistics.DELTA, "Glass01MSP", "tx1").toString(), "1");
+            verify(stub).putStringState(DatasetManagement.controllerIndexKey("did:dcat:provider:example-provider",
+                    "did:dcat:dataset:123456"), DatasetManagement.INDEX_VALUE);
+            verify(stub).putStringState(new CompositeKey(DatasetManagement.CHANGE_INDEX, "1663754400000000000", "tx1",
+                    "did:dcat:dataset:123456").toString(), "created");
+
+            ArgumentCaptor<String> summary = ArgumentCaptor.forClass(String.class);
+            verify(stub).putStringState(eq(DatasetSummary.key("did:dcat:dataset:123456")), summary.capture());
+            assertThat(new JSONObject(summary.getValue()).similar(new JSONObject()
+                    .put("did", "did:dcat:dataset:123456")
+                    .put("owner", new JSONObject().put("mspId", "Glass01MSP").put("userId", "user"))
+                    .put("modified", "2022-09-20T20:05:20.997")
+                    .put("hash", new JSONObject().put("value", "f4389t356t7zw457zn547zw4").put("alg", "URDNA2015"))))
+                    .isTrue();
+
+            ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+            verify(stub).setEvent(eq(DatasetChangeEvent.NAME), payload.capture());
+            JSONObject change = new JSONArray(new String(payload.getValue())).getJSONObject(0);
+            assertThat(change.getString("did")).isEqualTo("did:dcat:dataset:123456");
+            assertThat(change.getString("operation")).isEqualTo("created");
+            assertThat(change.getJSONObject("owner").getString("userId")).isEqualTo("user");
+            assertThat(change.getJSONObject("hash").getString("value")).isEqualTo("f4389t356t7zw457zn547zw4");
+            assertThat(change.getString("modified")).isEqualTo("2022-09-20T20:05:20.997");
         }
     }
 
@@ -244,8 +884,8 @@ public final class DatasetManagementTest {
                     .put("did", "did:dcat:dataset:123456")
                     .put("didDocument", didDocument.toString())
                     .put("owner", new JSONObject().put("userId", "user").put("mspId", "Glass01MSP"));
-            when(stub.getStringState("did:dcat:dataset:123456"))
-                    .thenReturn(returnValue.toString());
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(returnValue.toString().getBytes());
 
             JSONObject newDidDocument = new JSONObject(didDocument.toString());
 
@@ -275,8 +915,8 @@ public final class DatasetManagementTest {
                     .put("did", "did:dcat:dataset:123456")
                     .put("didDocument", didDocument.toString())
                     .put("owner", new JSONObject().put("userId", "user").put("mspId", "Glass01MSP"));
-            when(stub.getStringState("did:dcat:dataset:123456"))
-                    .thenReturn(returnValue.toString());
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(returnValue.toString().getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.UpdateDataset(ctx, didDocument.toString());
@@ -293,7 +933,7 @@ public final class DatasetManagementTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("did:dcat:dataset:123456")).thenReturn("");
+            when(stub.getState("did:dcat:dataset:123456")).thenReturn(new byte[0]);
 
             Throwable thrown = catchThrowable(() -> {
                 contract.UpdateDataset(ctx, didDocument.toString());
@@ -303,8 +943,269 @@ public final class DatasetManagementTest {
                     .hasMessage("Dataset did:dcat:dataset:123456 does not exist");
             assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("DATASET_NOT_FOUND".getBytes());
         }
+
+        @Test
+        public void updateSkipsWriteWhenDocumentIsUnchanged() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(ctx.getStub()).thenReturn(stub);
+            String stored = storedDataset("did:dcat:dataset:123456", "user");
+            when(stub.getState("did:dcat:dataset:123456")).thenReturn(stored.getBytes());
+
+            Dataset dataset = contract.UpdateDataset(ctx, didDocument.toString(2));
+
+            assertThat(dataset.getDidDocument()).isEqualTo(new JSONObject(stored).getString("didDocument"));
+            verify(stub, times(0)).putState(any(), any());
+            verify(stub, times(0)).putStringState(any(), any());
+            verify(stub, times(0)).setEvent(any(), any());
+        }
+
+        @Test
+        public void updateMovesControllerIndexEntry() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-09-21T10:00:00Z"));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(storedDataset("did:dcat:dataset:123456", "user").getBytes());
+
+            JSONObject newDidDocument = new JSONObject(didDocument.toString())
+                    .put("controller", new JSONArray().put("did:dcat:provider:other").put("did:dcat:provider:third"));
+            contract.UpdateDataset(ctx, newDidDocument.toString());
+
+            verify(stub).delState(DatasetManagement.controllerIndexKey("did:dcat:provider:example-provider",
+                    "did:dcat:dataset:123456"));
+            verify(stub).putStringState(DatasetManagement.controllerIndexKey("did:dcat:provider:other",
+                    "did:dcat:dataset:123456"), DatasetManagement.INDEX_VALUE);
+            verify(stub).putStringState(DatasetManagement.controllerIndexKey("did:dcat:provider:third",
+                    "did:dcat:dataset:123456"), DatasetManagement.INDEX_VALUE);
+            verify(stub, never()).putStringState(ownerIndexEntry("user", "did:dcat:dataset:123456").getKey(),
+                    DatasetManagement.INDEX_VALUE);
+        }
+
+        @Test
+        public void detectsChangesByHashAndContent() {
+            DidDocumentFields stored = DidDocumentFields.scan(didDocument.toString());
+            JSONObject changedHash = new JSONObject(didDocument.toString())
+                    .put("hash", new JSONObject().put("value", "a1b2c3").put("alg", "URDNA2015"));
+            JSONObject changedController = new JSONObject(didDocument.toString()).put("controller", "did:dcat:x");
+
+            assertThat(DatasetManagement.isUnchanged(stored, didDocument.toString(2),
+                    DidDocumentFields.scan(didDocument.toString(2)))).isTrue();
+            assertThat(DatasetManagement.isUnchanged(stored, changedHash.toString(),
+                    DidDocumentFields.scan(changedHash.toString()))).isFalse();
+            assertThat(DatasetManagement.isUnchanged(stored, changedController.toString(),
+                    DidDocumentFields.scan(changedController.toString()))).isFalse();
+        }
 }
 
+    @Nested
+    class InvokePatchDatasetTransaction {
+
+        private Context contextWithCreator(final ChaincodeStub stub, final byte[] creator) {
+            Context ctx = mock(Context.class);
+            when(stub.getCreator()).thenReturn(creator);
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-09-21T10:00:00Z"));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(ctx.getClientIdentity()).thenAnswer(invocation -> new ClientIdentity(stub));
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(storedDataset("did:dcat:dataset:123456", "user").getBytes());
+            return ctx;
+        }
+
+        @Test
+        public void patchWhenDatasetExistsWithAuthorizedUser() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithCreator(stub, CertificateUtil.getValidCreator());
+
+            String patch = new JSONArray()
+                    .put(new JSONObject().put("op", "test").put("path", "/hash/value")
+                            .put("value", "f4389t356t7zw457zn547zw4"))
+                    .put(new JSONObject().put("op", "replace").put("path", "/modified")
+                            .put("value", "2022-09-21T20:05:20.997"))
+                    .put(new JSONObject().put("op", "replace").put("path", "/hash/value").put("value", "a1b2c3"))
+                    .put(new JSONObject().put("op", "remove").put("path", "/controller"))
+                    .toString();
+
+            Dataset dataset = contract.PatchDataset(ctx, "did:dcat:dataset:123456", patch);
+
+            JSONObject expected = new JSONObject(didDocument.toString())
+                    .put("modified", "2022-09-21T20:05:20.997")
+                    .put("hash", new JSONObject().put("value", "a1b2c3").put("alg", "URDNA2015"));
+            expected.remove("controller");
+            assertThat(new JSONObject(dataset.getDidDocument()).similar(expected)).isTrue();
+            assertThat(dataset.getOwner()).isEqualTo(new DatasetOwner("user", "Glass01MSP"));
+            verify(stub).putState(eq("dataset:did:dcat:dataset:123456"), any());
+            verify(stub).delState("did:dcat:dataset:123456");
+
+            ArgumentCaptor<byte[]> event = ArgumentCaptor.forClass(byte[].class);
+            verify(stub).setEvent(eq(DatasetChangeEvent.NAME), event.capture());
+            JSONObject change = new JSONArray(new String(event.getValue())).getJSONObject(0);
+            assertThat(change.getString("operation")).isEqualTo(DatasetWriteResult.UPDATED);
+            assertThat(change.getJSONObject("hash").getString("value")).isEqualTo("a1b2c3");
+        }
+
+        @Test
+        public void patchRejectsChangeOfImmutableFields() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithCreator(stub, CertificateUtil.getValidCreator());
+
+            for (String path : Arrays.asList("/id", "/issued")) {
+                String patch = new JSONArray()
+                        .put(new JSONObject().put("op", "replace").put("path", path).put("value", "changed"))
+                        .toString();
+
+                Throwable thrown = catchThrowable(() -> {
+                    contract.PatchDataset(ctx, "did:dcat:dataset:123456", patch);
+                });
+
+                assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                        .hasMessage("Patch for dataset did:dcat:dataset:123456 must not change its id or issued date");
+                assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+            }
+            verify(stub, times(0)).putState(any(), any());
+        }
+
+        @Test
+        public void patchRejectsInvalidPatch() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithCreator(stub, CertificateUtil.getValidCreator());
+
+            String patch = new JSONArray()
+                    .put(new JSONObject().put("op", "test").put("path", "/modified").put("value", "outdated"))
+                    .toString();
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.PatchDataset(ctx, "did:dcat:dataset:123456", patch);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Invalid patch for dataset did:dcat:dataset:123456: Patch test 0 failed for /modified");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+            verify(stub, times(0)).putState(any(), any());
+        }
+
+        @Test
+        public void patchWhenDatasetExistsWithUnauthorizedUser() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithCreator(stub, CertificateUtil.getInvalidCreator());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.PatchDataset(ctx, "did:dcat:dataset:123456", "[]");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("User is not authorized");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("USER_NOT_AUTHORIZED".getBytes());
+        }
+    }
+
+    @Nested
+    class InvokeBatchTransactions {
+
+        private Context contextWithValidCreator(final ChaincodeStub stub) throws CertificateException, IOException {
+            Context ctx = mock(Context.class);
+            when(stub.getCreator()).thenReturn(CertificateUtil.getValidCreator());
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-09-21T10:00:00Z"));
+            when(stub.getTxId()).thenReturn("tx1");
+            ClientIdentity clientIdentity = new ClientIdentity(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(ctx.getStub()).thenReturn(stub);
+            return ctx;
+        }
+
+        @Test
+        public void createDatasetsReportsResultPerDocument() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithValidCreator(stub);
+            when(stub.getState("did:dcat:dataset:222222"))
+                    .thenReturn(storedDataset("did:dcat:dataset:222222", "user").getBytes());
+
+            JSONArray documents = new JSONArray()
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:111111"))
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:222222"))
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:111111"))
+                    .put(new JSONObject().put("controller", "did:dcat:provider:example-provider"));
+
+            JSONArray results = new JSONArray(contract.CreateDatasets(ctx, documents.toString()));
+            assertThat(results.length()).isEqualTo(4);
+            assertThat(results.getJSONObject(0).getString("status")).isEqualTo("created");
+            assertThat(results.getJSONObject(1).getString("status")).isEqualTo("rejected");
+            assertThat(results.getJSONObject(1).getString("reason"))
+                    .isEqualTo("Dataset did:dcat:dataset:222222 already exist");
+            assertThat(results.getJSONObject(2).getString("reason"))
+                    .isEqualTo("Dataset did:dcat:dataset:111111 already exist");
+            assertThat(results.getJSONObject(3).getString("reason")).isEqualTo("DID document has no id");
+            verify(stub).putStringState(ownerIndexEntry("user", "did:dcat:dataset:111111").getKey(),
+                    DatasetManagement.INDEX_VALUE);
+            verify(stub).putStringState(new CompositeKey(DatasetStatistics.DELTA, "Glass01MSP", "tx1").toString(), "1");
+        }
+
+        @Test
+        public void upsertDatasetsAppliesUpdateRules() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            Context ctx = contextWithValidCreator(stub);
+            when(stub.getState("did:dcat:dataset:111111"))
+                    .thenReturn(storedDataset("did:dcat:dataset:111111", "user").getBytes());
+            when(stub.getState("did:dcat:dataset:222222"))
+                    .thenReturn(storedDataset("did:dcat:dataset:222222", "user2").getBytes());
+            when(stub.getState("did:dcat:dataset:333333"))
+                    .thenReturn(storedDataset("did:dcat:dataset:333333", "user").getBytes());
+
+            JSONArray documents = new JSONArray()
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:111111")
+                            .put("issued", "2022-09-22T18:05:20.997").put("modified", "2022-09-22T18:05:20.997"))
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:222222"))
+                    .put(new JSONObject(didDocument.toString()).put("id", "did:dcat:dataset:333333")
+                            .put("issued", "2022-09-22T18:05:20.997"));
+
+            JSONArray results = new JSONArray(contract.UpsertDatasets(ctx, documents.toString()));
+            assertThat(results.getJSONObject(0).getString("status")).isEqualTo("updated");
+            assertThat(results.getJSONObject(1).getString("status")).isEqualTo("rejected");
+            assertThat(results.getJSONObject(1).getString("reason")).isEqualTo("User is not authorized");
+            assertThat(results.getJSONObject(2).getString("status")).isEqualTo("unchanged");
+            verify(stub, times(0)).putStringState(eq("did:dcat:dataset:333333"), any());
+            verify(stub, times(0)).putState(eq("dataset:did:dcat:dataset:333333"), any());
+
+            ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+            verify(stub, times(1)).setEvent(eq(DatasetChangeEvent.NAME), payload.capture());
+            JSONArray changes = new JSONArray(new String(payload.getValue()));
+            assertThat(changes.length()).isEqualTo(1);
+            assertThat(changes.getJSONObject(0).getString("did")).isEqualTo("did:dcat:dataset:111111");
+            assertThat(changes.getJSONObject(0).getString("operation")).isEqualTo("updated");
+        }
+
+        @Test
+        public void rejectMalformedBatch() throws CertificateException, IOException {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateDatasets(ctx, didDocument.toString());
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("DID documents must be a JSON array");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ARGUMENT".getBytes());
+        }
+    }
+
     @Nested
     class InvokeReadDatasetTransaction {
 
@@ -325,20 +1226,41 @@ public final class DatasetManagementTest {
                             .put("didDocument", didDocument.toString())
                             .put("owner", new JSONObject().put("userId", "user").put("mspId", "Glass01MSP"));
 
-            when(stub.getStringState("did:dcat:dataset:123456"))
-                    .thenReturn(returnValue.toString());
+            when(stub.getState("did:dcat:dataset:123456"))
+                    .thenReturn(returnValue.toString().getBytes());
 
             Dataset dataset = contract.ReadDataset(ctx, "did:dcat:dataset:123456");
             assertThat(dataset).isEqualTo(new Dataset("did:dcat:dataset:123456", didDocument.toString(), owner));
         }
 
+        @Test
+        public void readSeveralDatasets() {
+            DatasetManagement contract = new DatasetManagement();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("did:dcat:dataset:111111"))
+                    .thenReturn(storedDataset("did:dcat:dataset:111111", "user").getBytes());
+            when(stub.getState("did:dcat:dataset:333333"))
+                    .thenReturn(storedDataset("did:dcat:dataset:333333", "user").getBytes());
+            when(stub.getState("did:dcat:dataset:222222")).thenReturn(new byte[0]);
+
+            JSONArray dids = new JSONArray().put("did:dcat:dataset:111111").put("did:dcat:dataset:222222")
+                    .put("did:dcat:dataset:333333").put("did:dcat:dataset:111111");
+
+            JSONObject result = new JSONObject(contract.ReadDatasets(ctx, dids.toString()));
+            assertThat(result.getJSONArray("records").length()).isEqualTo(2);
+            assertThat(result.getJSONArray("records").getJSONObject(1).get("did")).isEqualTo("did:dcat:dataset:333333");
+            assertThat(result.getJSONArray("missing").toList()).containsExactly("did:dcat:dataset:222222");
+        }
+
         @Test
         public void readWhenDatasetDoesNotExist() {
             DatasetManagement contract = new DatasetManagement();
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("did:dcat:1111")).thenReturn("");
+            when(stub.getState("did:dcat:1111")).thenReturn(new byte[0]);
 
             Throwable thrown = catchThrowable(() -> {
                 contract.ReadDataset(ctx, "did:dcat:1111");
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class DidDocumentFieldsTest {
+
+    private final JSONObject didDocument = new JSONObject()
+            .put("@context", new JSONArray().put("https://www.w3.org/ns/did/v1").put("https://did4dcat.org/context/v1"))
+            .put("id", "did:dcat:dataset:123456")
+            .put("controller", "did:dcat:provider:example-provider")
+            .put("@url", new JSONObject().put("@id", "http://data.europa.eu/88u/dataset/europeana-aggregated-dataset.rdf"))
+            .put("issued", "2022-09-19T18:05:20.997")
+            .put("modified", "2022-09-20T20:05:20.997")
+            .put("hash", new JSONObject().put("value", "f4389t356t7zw457zn547zw4").put("alg", "URDNA2015"));
+
+    @Test
+    public void readsTopLevelFields() {
+        DidDocumentFields fields = DidDocumentFields.scan(didDocument.toString(2));
+
+        assertThat(fields.getString(DidDocumentFields.ID)).isEqualTo("did:dcat:dataset:123456");
+        assertThat(fields.getString(DidDocumentFields.ISSUED)).isEqualTo("2022-09-19T18:05:20.997");
+        assertThat(fields.getString(DidDocumentFields.CONTROLLER)).isEqualTo("did:dcat:provider:example-provider");
+        assertThat(new JSONObject(fields.raw(DidDocumentFields.HASH)).getString("value"))
+                .isEqualTo("f4389t356t7zw457zn547zw4");
+        assertThat(fields.optString(DidDocumentFields.HASH)).isNull();
+        assertThat(fields.hashValue()).isEqualTo("f4389t356t7zw457zn547zw4");
+        assertThat(fields.controllers()).containsExactly("did:dcat:provider:example-provider");
+        assertThat(DidDocumentFields.scan("{\"hash\":\"f4389t\"}").hashValue()).isNull();
+        assertThat(DidDocumentFields.scan("{\"controller\":[\"a\",1,\"b\",\"a\"]}").controllers())
+                .containsExactly("a", "b");
+    }
+
+    @Test
+    public void ignoresNestedFields() {
+        String document = "{\"service\":[{\"id\":\"did:dcat:dataset:1#s\"}],\"nested\":{\"issued\":\"x\"}}";
+        DidDocumentFields fields = DidDocumentFields.scan(document);
+
+        assertThat(fields.has(DidDocumentFields.ID)).isFalse();
+        assertThat(fields.optString(DidDocumentFields.ISSUED)).isNull();
+    }
+
+    @Test
+    public void decodesEscapedStrings() {
+        DidDocumentFields fields = DidDocumentFields.scan("{\"\\u0069d\":\"did:dcat:\\\"q\\\"\\u00fc\"}");
+
+        assertThat(fields.getString(DidDocumentFields.ID)).isEqualTo("did:dcat:\"q\"\u00fc");
+    }
+
+    @Test
+    public void splicesIssuedIntoDocument() {
+        DidDocumentFields fields = DidDocumentFields.scan(didDocument.toString());
+        JSONObject replaced = new JSONObject(fields.withString(DidDocumentFields.ISSUED, "2020-01-01T00:00:00"));
+
+        assertThat(replaced.similar(new JSONObject(didDocument.toString()).put("issued", "2020-01-01T00:00:00")))
+                .isTrue();
+
+        String added = DidDocumentFields.scan("{ \"id\": \"did:dcat:dataset:1\" }")
+                .withString(DidDocumentFields.ISSUED, "2020-01-01T00:00:00");
+        assertThat(new JSONObject(added).getString("issued")).isEqualTo("2020-01-01T00:00:00");
+        assertThat(DidDocumentFields.scan("{}").withString(DidDocumentFields.ISSUED, "x")).isEqualTo("{\"issued\":\"x\"}");
+    }
+
+    @Test
+    public void rejectsMalformedDocuments() {
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("[]"))).isInstanceOf(JSONException.class);
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("{\"id\":\"a\",}"))).isInstanceOf(JSONException.class);
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("{\"id\":01}"))).isInstanceOf(JSONException.class);
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("{\"id\":\"a\"} x"))).isInstanceOf(JSONException.class);
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("{\"id\":\"a\",\"id\":\"b\"}")))
+                .isInstanceOf(JSONException.class);
+        assertThat(catchThrowable(() -> DidDocumentFields.scan("{\"id\":\"a\"}").getString(DidDocumentFields.ISSUED)))
+                .isInstanceOf(JSONException.class);
+    }
+
+    @Test
+    public void splitsArraysIntoElements() {
+        assertThat(JsonScanner.splitArray(" [ {\"id\":\"a\"} , 1, \"b\" ] "))
+                .containsExactly("{\"id\":\"a\"}", "1", "\"b\"");
+        assertThat(JsonScanner.splitArray("[]")).isEmpty();
+        assertThat(catchThrowable(() -> JsonScanner.splitArray("{}"))).isInstanceOf(JSONException.class);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public final class DistinguishedNamesTest {
+
+    @Test
+    public void readsCommonName() {
+        assertThat(DistinguishedNames.commonName("CN=user,OU=department1,OU=client,OU=org1")).isEqualTo("user");
+        assertThat(DistinguishedNames.commonName("OU=client, CN=admin")).isEqualTo("admin");
+        assertThat(DistinguishedNames.commonName("CN=M\u00fcller, OU=client")).isEqualTo("M\u00fcller");
+    }
+
+    @Test
+    public void keepsDerivationOfStoredOwners() {
+        // existing owner fields and owner index keys were written with these user IDs
+        assertThat(DistinguishedNames.commonName("CN=Doe\\, John, OU=client")).isEqualTo("Doe\\");
+        assertThat(DistinguishedNames.commonName("OU=client+CN=user, O=org1")).isNull();
+    }
+
+    @Test
+    public void handlesRepeatedAndMissingCommonNames() {
+        assertThat(DistinguishedNames.commonName("CN=first, CN=last")).isEqualTo("last");
+        assertThat(DistinguishedNames.commonName("OU=client, O=org1")).isNull();
+    }
+}
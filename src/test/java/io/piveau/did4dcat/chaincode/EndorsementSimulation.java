@@ -0,0 +1,132 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/**
+ * Runs a workload of concurrent transactions against a {@link WorldState}.
+ *
+ * The transactions of a block are endorsed against the same committed state, like parallel client
+ * requests arriving between two blocks, and are then validated and committed in their order.
+ * Transactions rejected by the contract are not ordered, as a client would not submit them.
+ */
+final class EndorsementSimulation {
+
+    /**
+     * A transaction of the workload, invoked with the context of its simulation.
+     */
+    interface Invocation {
+        Object invoke(DatasetManagement contract, Context ctx);
+    }
+
+    /**
+     * Outcome of a simulated workload.
+     */
+    static final class Report {
+
+        private final Map<WorldState.ValidationCode, Integer> codes = new EnumMap<>(WorldState.ValidationCode.class);
+
+        private int endorsementFailures;
+
+        private int blocks;
+
+        int count(final WorldState.ValidationCode code) {
+            return codes.getOrDefault(code, 0);
+        }
+
+        int getEndorsementFailures() {
+            return endorsementFailures;
+        }
+
+        int getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * @return the number of transactions that were endorsed and ordered
+         */
+        int getCommitted() {
+            return codes.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        /**
+         * @return the share of ordered transactions that failed validation because of read conflicts
+         */
+        double getConflictRate() {
+            int committed = getCommitted();
+            return committed == 0 ? 0 : (double) (committed - count(WorldState.ValidationCode.VALID)) / committed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("blocks=%d, committed=%d, valid=%d, mvccConflicts=%d, phantomConflicts=%d, "
+                    + "endorsementFailures=%d, conflictRate=%.3f", blocks, getCommitted(),
+                    count(WorldState.ValidationCode.VALID), count(WorldState.ValidationCode.MVCC_READ_CONFLICT),
+                    count(WorldState.ValidationCode.PHANTOM_READ_CONFLICT), endorsementFailures, getConflictRate());
+        }
+    }
+
+    private final WorldState worldState;
+
+    private final DatasetManagement contract = new DatasetManagement();
+
+    private final byte[] creator;
+
+    private long transactions;
+
+    EndorsementSimulation(final WorldState worldState, final byte[] creator) {
+        this.worldState = worldState;
+        this.creator = creator;
+    }
+
+    /**
+     * @param workload the transactions, in the order they arrive
+     * @param blockSize the number of transactions endorsed concurrently and cut into one block
+     * @return the outcome of the workload
+     */
+    Report run(final List<Invocation> workload, final int blockSize) {
+        return run(workload, blockSize, creator);
+    }
+
+    /**
+     * @param workload the transactions, in the order they arrive
+     * @param blockSize the number of transactions endorsed concurrently and cut into one block
+     * @param submitter the serialized identity submitting the transactions
+     * @return the outcome of the workload
+     */
+    Report run(final List<Invocation> workload, final int blockSize, final byte[] submitter) {
+        Report report = new Report();
+
+        for (int start = 0; start < workload.size(); start += blockSize) {
+            List<InMemoryChaincodeStub> block = new ArrayList<>(blockSize);
+
+            for (Invocation invocation : workload.subList(start, Math.min(start + blockSize, workload.size()))) {
+                InMemoryChaincodeStub stub = new InMemoryChaincodeStub(submitter, worldState);
+                stub.beginTransaction("tx" + ++transactions, Instant.ofEpochSecond(worldState.getHeight()));
+                try {
+                    invocation.invoke(contract, contract.createContext(stub));
+                    block.add(stub);
+                } catch (ChaincodeException e) {
+                    report.endorsementFailures++;
+                }
+            }
+
+            for (WorldState.ValidationCode code : worldState.commitBlock(block)) {
+                report.codes.merge(code, 1, Integer::sum);
+            }
+            report.blocks++;
+        }
+
+        return report;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import org.hyperledger.fabric.contract.Context;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public final class EndorsementSimulationTest {
+
+    private final DatasetOwner owner = new DatasetOwner("user", "Glass01MSP");
+
+    private WorldState worldState;
+
+    private EndorsementSimulation simulation;
+
+    private static String didDocument(final String did, final String modified) {
+        return new JSONObject()
+                .put("id", did)
+                .put("controller", "did:dcat:provider:example-provider")
+                .put("issued", "2022-09-19T18:05:20.997")
+                .put("modified", modified).toString();
+    }
+
+    private static String did(final int index) {
+        return "did:dcat:dataset:" + index;
+    }
+
+    private static EndorsementSimulation.Invocation update(final String did, final String modified) {
+        return (contract, ctx) -> contract.UpdateDataset(ctx, didDocument(did, modified));
+    }
+
+    private String evaluate(final BiFunction<DatasetManagement, Context, String> query) {
+        return evaluate(Instant.EPOCH, query);
+    }
+
+    private String evaluate(final Instant timestamp, final BiFunction<DatasetManagement, Context, String> query) {
+        return evaluate(CertificateUtil.getValidCreator(), timestamp, query);
+    }
+
+    private String evaluateAsAdministrator(final BiFunction<DatasetManagement, Context, String> query) {
+        return evaluate(CertificateUtil.getAdminCreator(), Instant.EPOCH, query);
+    }
+
+    private String evaluate(final byte[] creator, final Instant timestamp,
+            final BiFunction<DatasetManagement, Context, String> query) {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub(creator, worldState);
+        stub.beginTransaction("query", timestamp);
+        DatasetManagement contract = new DatasetManagement();
+        return query.apply(contract, contract.createContext(stub));
+    }
+
+    @BeforeEach
+    public void setUp() {
+        worldState = new WorldState();
+        for (int i = 0; i < 10; i++) {
+            Dataset dataset = new Dataset(did(i), didDocument(did(i), "2022-09-20T20:05:20.997"), owner);
+            worldState.put(DatasetManagement.datasetKey(dataset.getDid()), DatasetCodec.encode(dataset));
+        }
+        simulation = new EndorsementSimulation(worldState, CertificateUtil.getValidCreator());
+    }
+
+    @Test
+    public void concurrentUpdatesOfOneDatasetConflict() {
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                update(did(1), "2022-10-01T00:00:00"),
+                update(did(1), "2022-10-02T00:00:00"),
+                update(did(1), "2022-10-03T00:00:00")), 3);
+
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(1);
+        assertThat(report.count(WorldState.ValidationCode.MVCC_READ_CONFLICT)).isEqualTo(2);
+        assertThat(DatasetCodec.decode(worldState.get(DatasetManagement.datasetKey(did(1))).getValue()).getDidDocument())
+                .contains("2022-10-01T00:00:00");
+    }
+
+    @Test
+    public void updatesInSeparateBlocksAreValid() {
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                update(did(1), "2022-10-01T00:00:00"),
+                update(did(1), "2022-10-02T00:00:00")), 1);
+
+        assertThat(report.getBlocks()).isEqualTo(2);
+        assertThat(report.getConflictRate()).isZero();
+        assertThat(worldState.get(DatasetManagement.datasetKey(did(1))).getVersion()).isEqualTo(new WorldState.Version(2, 0));
+    }
+
+    @Test
+    public void concurrentUpdatesOfDifferentDatasetsDoNotConflict() {
+        List<EndorsementSimulation.Invocation> workload = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            workload.add(update(did(i), "2022-10-01T00:00:00"));
+        }
+
+        EndorsementSimulation.Report report = simulation.run(workload, 10);
+
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(10);
+    }
+
+    @Test
+    public void rangeQueriesConflictWithConcurrentInserts() {
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.CreateDataset(ctx, didDocument(did(42), "2022-10-01T00:00:00")),
+                (contract, ctx) -> contract.BackfillIndexes(ctx, "", 100)), 2, CertificateUtil.getAdminCreator());
+
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(1);
+        assertThat(report.count(WorldState.ValidationCode.PHANTOM_READ_CONFLICT)).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentCreatesCountDatasetsWithoutConflicts() {
+        List<EndorsementSimulation.Invocation> workload = new ArrayList<>();
+        for (int i = 100; i < 110; i++) {
+            String document = didDocument(did(i), "2022-10-01T00:00:00");
+            workload.add((contract, ctx) -> contract.CreateDataset(ctx, document));
+        }
+
+        EndorsementSimulation.Report report = simulation.run(workload, 10);
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(10);
+        assertThat(new JSONObject(evaluate(DatasetManagement::GetDatasetStatistics)).getInt("deltas")).isEqualTo(10);
+
+        report = simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.CompactDatasetStatistics(ctx)), 1);
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(1);
+        JSONObject statistics = new JSONObject(evaluate(DatasetManagement::GetDatasetStatistics));
+        assertThat(statistics.getInt("deltas")).isEqualTo(1);
+        assertThat(statistics.getJSONObject("datasetsByMspId").getLong("Glass01MSP")).isEqualTo(10);
+
+        // the datasets of the genesis block are only counted after their indexes were backfilled
+        simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.BackfillIndexes(ctx, "", 100),
+                (contract, ctx) -> contract.RebuildDatasetStatistics(ctx)), 1, CertificateUtil.getAdminCreator());
+        assertThat(new JSONObject(evaluate(DatasetManagement::GetDatasetStatistics)).getLong("datasets"))
+                .isEqualTo(20);
+    }
+
+    @Test
+    public void changeFeedReturnsChangesAfterCursor() {
+        simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.CreateDataset(ctx, didDocument(did(100), "2022-10-01T00:00:00")),
+                (contract, ctx) -> contract.CreateDataset(ctx, didDocument(did(101), "2022-10-01T00:00:00")),
+                update(did(1), "2022-10-02T00:00:00")), 1);
+
+        // changes are held back until they are older than the delay
+        Instant recent = Instant.EPOCH.plus(DatasetManagement.CHANGE_FEED_DELAY);
+        JSONObject page = new JSONObject(evaluate(recent, (contract, ctx) -> contract.GetChangesSince(ctx, "", 2)));
+        assertThat(page.getInt("fetchedCount")).isZero();
+        assertThat(page.getString("cursor")).isEmpty();
+
+        Instant settled = recent.plusSeconds(60);
+        page = new JSONObject(evaluate(settled, (contract, ctx) -> contract.GetChangesSince(ctx, "", 2)));
+        assertThat(page.getInt("fetchedCount")).isEqualTo(2);
+        assertThat(page.getJSONArray("records").getJSONObject(0).getString("did")).isEqualTo(did(100));
+        assertThat(page.getJSONArray("records").getJSONObject(0).getString("operation")).isEqualTo("created");
+        assertThat(page.getJSONArray("records").getJSONObject(0).getString("timestamp"))
+                .isEqualTo("1970-01-01T00:00:01Z");
+
+        String cursor = page.getString("cursor");
+        page = new JSONObject(evaluate(settled, (contract, ctx) -> contract.GetChangesSince(ctx, cursor, 2)));
+        assertThat(page.getInt("fetchedCount")).isEqualTo(1);
+        assertThat(page.getJSONArray("records").getJSONObject(0).getString("did")).isEqualTo(did(1));
+        assertThat(page.getJSONArray("records").getJSONObject(0).getString("operation")).isEqualTo("updated");
+
+        String lastCursor = page.getString("cursor");
+        page = new JSONObject(evaluate(settled, (contract, ctx) -> contract.GetChangesSince(ctx, lastCursor, 2)));
+        assertThat(page.getInt("fetchedCount")).isZero();
+        assertThat(page.getString("cursor")).isEqualTo(lastCursor);
+    }
+
+    @Test
+    public void returnsCommittedHistoryInPages() {
+        simulation.run(Arrays.asList(
+                update(did(1), "2022-10-01T00:00:00"),
+                update(did(1), "2022-10-02T00:00:00"),
+                update(did(1), "2022-10-03T00:00:00")), 1);
+        // the second update conflicts with the first and is not written
+        simulation.run(Arrays.asList(
+                update(did(1), "2022-10-04T00:00:00"),
+                update(did(1), "2022-10-05T00:00:00")), 2);
+
+        JSONObject page = new JSONObject(evaluate((contract, ctx) ->
+                contract.GetDatasetHistory(ctx, did(1), 2, "", false)));
+        JSONArray records = page.getJSONArray("records");
+        assertThat(records.length()).isEqualTo(2);
+        assertThat(records.getJSONObject(0).getString("txId")).isEqualTo("tx4");
+        assertThat(records.getJSONObject(0).getJSONObject("dataset").getString("didDocument"))
+                .contains("2022-10-04T00:00:00");
+        assertThat(records.getJSONObject(1).getString("txId")).isEqualTo("tx3");
+        assertThat(records.getJSONObject(1).getString("timestamp")).isEqualTo("1970-01-01T00:00:03Z");
+
+        String bookmark = page.getString("bookmark");
+        assertThat(bookmark).isEqualTo("tx2");
+        page = new JSONObject(evaluate((contract, ctx) ->
+                contract.GetDatasetHistory(ctx, did(1), 2, bookmark, true)));
+        records = page.getJSONArray("records");
+        assertThat(records.length()).isEqualTo(2);
+        assertThat(records.getJSONObject(0).getString("txId")).isEqualTo("tx2");
+        assertThat(records.getJSONObject(1).getString("txId")).isEqualTo("tx1");
+        assertThat(records.getJSONObject(1).has("dataset")).isFalse();
+        assertThat(page.getString("bookmark")).isEqualTo("genesis1");
+    }
+
+    @Test
+    public void historyContinuesWithLegacyKeyOfMigratedRecord() {
+        Dataset legacy = new Dataset(did(20), didDocument(did(20), "2022-09-20T20:05:20.997"), owner);
+        worldState.put(legacy.getDid(), DatasetCodec.encode(legacy));
+
+        simulation.run(Arrays.asList(update(did(20), "2022-10-01T00:00:00")), 1);
+        simulation.run(Arrays.asList(update(did(20), "2022-10-02T00:00:00")), 1);
+        assertThat(worldState.get(did(20))).isNull();
+        assertThat(worldState.history(did(20))).hasSize(2);
+
+        JSONObject page = new JSONObject(evaluate((contract, ctx) ->
+                contract.GetDatasetHistory(ctx, did(20), 2, "", false)));
+        JSONArray records = page.getJSONArray("records");
+        assertThat(records.getJSONObject(0).getString("txId")).isEqualTo("tx2");
+        assertThat(records.getJSONObject(1).getString("txId")).isEqualTo("tx1");
+        assertThat(page.getString("bookmark")).isEqualTo("genesis10");
+
+        // the delete that moved the record is left out
+        page = new JSONObject(evaluate((contract, ctx) ->
+                contract.GetDatasetHistory(ctx, did(20), 2, "genesis10", false)));
+        records = page.getJSONArray("records");
+        assertThat(records.length()).isEqualTo(1);
+        assertThat(records.getJSONObject(0).getBoolean("isDelete")).isFalse();
+        assertThat(records.getJSONObject(0).getJSONObject("dataset").getString("didDocument"))
+                .contains("2022-09-20T20:05:20.997");
+        assertThat(page.getString("bookmark")).isEmpty();
+    }
+
+    @Test
+    public void migratesLegacyKeysInBatches() {
+        for (int i = 10; i < 15; i++) {
+            Dataset dataset = new Dataset(did(i), didDocument(did(i), "2022-09-20T20:05:20.997"), owner);
+            worldState.put(dataset.getDid(), DatasetCodec.encode(dataset));
+        }
+        assertThat(new JSONArray(evaluate((contract, ctx) -> contract.GetAllDatasets(ctx))).length()).isEqualTo(15);
+
+        // updates move legacy records themselves, the migration skips them
+        simulation.run(Arrays.asList(update(did(10), "2022-10-01T00:00:00")), 1);
+        assertThat(worldState.get(did(10))).isNull();
+
+        JSONObject batch = new JSONObject(
+                evaluateAsAdministrator((contract, ctx) -> contract.MigrateDatasetKeys(ctx, "", 3)));
+        assertThat(batch.getInt("migrated")).isEqualTo(3);
+        assertThat(batch.getString("nextStartKey")).isEqualTo(did(14));
+
+        // only administrators may migrate
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.MigrateDatasetKeys(ctx, "", 3)), 1);
+        assertThat(report.getEndorsementFailures()).isEqualTo(1);
+        assertThat(worldState.get(did(11))).isNotNull();
+
+        simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.MigrateDatasetKeys(ctx, "", 3),
+                (contract, ctx) -> contract.MigrateDatasetKeys(ctx, did(14), 3)), 1, CertificateUtil.getAdminCreator());
+        assertThat(new JSONObject(evaluateAsAdministrator((contract, ctx) -> contract.MigrateDatasetKeys(ctx, "", 3)))
+                .getInt("migrated")).isZero();
+        for (int i = 10; i < 15; i++) {
+            assertThat(worldState.get(did(i))).isNull();
+            assertThat(worldState.get(DatasetManagement.datasetKey(did(i)))).isNotNull();
+        }
+        assertThat(new JSONArray(evaluate((contract, ctx) -> contract.GetAllDatasets(ctx))).length()).isEqualTo(15);
+    }
+
+    @Test
+    public void concurrentWritesUpdateRegistryDigestWithoutConflicts() {
+        simulation.run(Arrays.asList((contract, ctx) -> contract.RebuildRegistryDigest(ctx)), 1);
+
+        String documents = new JSONArray()
+                .put(new JSONObject(didDocument(did(101), "2022-10-01T00:00:00")))
+                .put(new JSONObject(didDocument(did(2), "2022-10-01T00:00:00"))).toString();
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                (contract, ctx) -> contract.CreateDataset(ctx, didDocument(did(100), "2022-10-01T00:00:00")),
+                update(did(1), "2022-10-01T00:00:00"),
+                (contract, ctx) -> contract.UpsertDatasets(ctx, documents)), 3);
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(3);
+
+        JSONObject digest = new JSONObject(evaluate(DatasetManagement::GetRegistryDigest));
+        JSONObject computed = new JSONObject(evaluate(DatasetManagement::RebuildRegistryDigest));
+        assertThat(digest.getString("digest")).isEqualTo(computed.getString("digest"));
+        assertThat(digest.getJSONObject("buckets").similar(computed.getJSONObject("buckets"))).isTrue();
+
+        simulation.run(Arrays.asList((contract, ctx) -> contract.CompactRegistryDigest(ctx)), 1);
+        JSONObject compacted = new JSONObject(evaluate(DatasetManagement::GetRegistryDigest));
+        assertThat(compacted.getString("digest")).isEqualTo(computed.getString("digest"));
+        assertThat(compacted.getInt("deltas")).isEqualTo(compacted.getJSONObject("buckets").length());
+    }
+
+    @Test
+    public void reportsConflictRateOfHotKeys() {
+        List<EndorsementSimulation.Invocation> workload = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            workload.add(update(did(i % 2), "2022-10-01T00:00:" + i));
+        }
+
+        EndorsementSimulation.Report report = simulation.run(workload, 10);
+
+        // two datasets per block of ten, so only two updates per block are valid
+        assertThat(report.getCommitted()).isEqualTo(100);
+        assertThat(report.count(WorldState.ValidationCode.VALID)).isEqualTo(20);
+        assertThat(report.getConflictRate()).isEqualTo(0.8);
+    }
+
+    @Test
+    public void rejectedTransactionsAreNotOrdered() {
+        EndorsementSimulation.Report report = simulation.run(Arrays.asList(
+                update(did(99), "2022-10-01T00:00:00"),
+                update(did(1), "2022-10-01T00:00:00")), 2);
+
+        assertThat(report.getEndorsementFailures()).isEqualTo(1);
+        assertThat(report.getCommitted()).isEqualTo(1);
+    }
+
+    @Test
+    public void stubDoesNotSeeUncommittedWrites() {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub(CertificateUtil.getValidCreator(), worldState);
+        stub.beginTransaction("tx1", Instant.EPOCH);
+
+        stub.putStringState("key", "value");
+        assertThat(stub.getState("key")).isEmpty();
+        assertThat(stub.getReadSet()).containsEntry("key", null);
+
+        assertThat(stub.commit()).isEqualTo(WorldState.ValidationCode.VALID);
+        assertThat(stub.getStringState("key")).isEqualTo("value");
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Chaincode stub simulating a transaction against an in-memory {@link WorldState}, for benchmarks and
+ * simulations.
+ *
+ * Like on a peer, the versions of the keys read and the range queries run are recorded in a read set,
+ * writes are collected in a write set and are not visible to reads until the transaction is committed
+ * with a block. Range queries follow the Fabric rules: the empty start key excludes composite keys,
+ * bookmarks are the key to continue from. The history of a key only contains committed modifications.
+ */
+final class InMemoryChaincodeStub implements ChaincodeStub {
+
+    private static final String UNSPECIFIED_START_KEY = "\u0001";
+
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+
+    private final WorldState worldState;
+
+    private final Map<String, WorldState.Version> readSet = new LinkedHashMap<>();
+
+    private final List<RangeRead> rangeReads = new ArrayList<>();
+
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+
+    private final byte[] creator;
+
+    private String txId = "tx0";
+
+    private Instant txTimestamp = Instant.EPOCH;
+
+    private ChaincodeEvent event;
+
+    InMemoryChaincodeStub(final byte[] creator) {
+        this(creator, new WorldState());
+    }
+
+    InMemoryChaincodeStub(final byte[] creator, final WorldState worldState) {
+        this.creator = creator;
+        this.worldState = worldState;
+    }
+
+    /**
+     * Starts a new transaction, discarding the read and write set and the event of the previous one.
+     */
+    void beginTransaction(final String id, final Instant timestamp) {
+        this.txId = id;
+        this.txTimestamp = timestamp;
+        this.readSet.clear();
+        this.rangeReads.clear();
+        this.writeSet.clear();
+        this.event = null;
+    }
+
+    /**
+     * Commits the current transaction in a block of its own.
+     *
+     * @return the validation code of the transaction
+     */
+    WorldState.ValidationCode commit() {
+        WorldState.ValidationCode code = worldState.commitBlock(Collections.singletonList(this)).get(0);
+        beginTransaction(txId, txTimestamp);
+        return code;
+    }
+
+    WorldState getWorldState() {
+        return worldState;
+    }
+
+    /**
+     * @return the version of each key read by the current transaction, null for keys that did not exist
+     */
+    Map<String, WorldState.Version> getReadSet() {
+        return Collections.unmodifiableMap(readSet);
+    }
+
+    List<RangeRead> getRangeReads() {
+        return Collections.unmodifiableList(rangeReads);
+    }
+
+    /**
+     * @return the writes of the current transaction, deletions have a null value
+     */
+    Map<String, byte[]> getWriteSet() {
+        return Collections.unmodifiableMap(writeSet);
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        WorldState.VersionedValue value = worldState.get(key);
+        if (!readSet.containsKey(key)) {
+            readSet.put(key, value == null ? null : value.getVersion());
+        }
+        return value == null ? new byte[0] : value.getValue();
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        writeSet.put(key, value);
+    }
+
+    @Override
+    public void delState(final String key) {
+        writeSet.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        RangeRead rangeRead = new RangeRead(start(startKey), endKey == null ? "" : endKey);
+        rangeReads.add(rangeRead);
+        Iterable<Map.Entry<String, WorldState.VersionedValue>> entries =
+                worldState.range(rangeRead.startKey, rangeRead.endKey).entrySet();
+        Iterable<KeyValue> results = () -> new EntryIterator(entries.iterator(), rangeRead);
+        return new Results(results, "", 0);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+            final String startKey, final String endKey, final int pageSize, final String bookmark) {
+        String start = bookmark == null || bookmark.isEmpty() ? start(startKey) : bookmark;
+        List<KeyValue> page = new ArrayList<>();
+        String nextBookmark = "";
+        for (Map.Entry<String, WorldState.VersionedValue> entry
+                : worldState.range(start, endKey == null ? "" : endKey).entrySet()) {
+            if (page.size() == pageSize) {
+                nextBookmark = entry.getKey();
+                break;
+            }
+            page.add(new Entry(entry.getKey(), entry.getValue().getValue()));
+        }
+        return new Results(page, nextBookmark, page.size());
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return getStateByRange(compositeKey, compositeKey + MAX_UNICODE_RUNE);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+            final String objectType, final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        String key = compositeKey.toString();
+        return getStateByRangeWithPagination(key, key + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        this.event = ChaincodeEvent.newBuilder()
+                .setEventName(name)
+                .setTxId(txId)
+                .setPayload(ByteString.copyFrom(payload))
+                .build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return txTimestamp;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return creator;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "channel";
+    }
+
+    @Override
+    public String getMspId() {
+        return "Glass01MSP";
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFunction() {
+        return null;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public Response invokeChaincode(final String chaincodeName, final List<byte[]> args, final String channel) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+            final String query, final int pageSize, final String bookmark) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        List<KeyModification> modifications = new ArrayList<>(worldState.history(key));
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return modifications.iterator();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(
+            final String collection, final String startKey, final String endKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+            final String collection, final String compositeKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+            final String collection, final CompositeKey compositeKey) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+            final String collection, final String objectType, final String... attributes) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static String start(final String startKey) {
+        return startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+    }
+
+    /**
+     * A range query of a transaction with the keys and versions it returned. Like on a peer, only the
+     * part of the range that was actually iterated is validated.
+     */
+    static final class RangeRead {
+
+        private final String startKey;
+
+        private final String endKey;
+
+        private final List<String> keys = new ArrayList<>();
+
+        private final List<WorldState.Version> versions = new ArrayList<>();
+
+        private boolean exhausted;
+
+        RangeRead(final String startKey, final String endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+
+        boolean matches(final WorldState state) {
+            NavigableMap<String, WorldState.VersionedValue> current = state.range(startKey, endKey);
+            if (!exhausted) {
+                current = keys.isEmpty() ? Collections.emptyNavigableMap() : current.headMap(keys.get(keys.size() - 1), true);
+            }
+            if (current.size() != keys.size()) {
+                return false;
+            }
+            int i = 0;
+            for (Map.Entry<String, WorldState.VersionedValue> entry : current.entrySet()) {
+                if (!entry.getKey().equals(keys.get(i)) || !entry.getValue().getVersion().equals(versions.get(i))) {
+                    return false;
+                }
+                i++;
+            }
+            return true;
+        }
+    }
+
+    private static final class EntryIterator implements Iterator<KeyValue> {
+
+        private final Iterator<Map.Entry<String, WorldState.VersionedValue>> entries;
+
+        private final RangeRead rangeRead;
+
+        EntryIterator(final Iterator<Map.Entry<String, WorldState.VersionedValue>> entries,
+                final RangeRead rangeRead) {
+            this.entries = entries;
+            this.rangeRead = rangeRead;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = entries.hasNext();
+            if (!hasNext) {
+                rangeRead.exhausted = true;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public KeyValue next() {
+            Map.Entry<String, WorldState.VersionedValue> entry = entries.next();
+            rangeRead.keys.add(entry.getKey());
+            rangeRead.versions.add(entry.getValue().getVersion());
+            return new Entry(entry.getKey(), entry.getValue().getValue());
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+
+        private final String key;
+
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Results
+            implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final Iterable<KeyValue> results;
+
+        private final String bookmark;
+
+        private final int fetchedCount;
+
+        Results(final Iterable<KeyValue> results, final String bookmark, final int fetchedCount) {
+            this.results = results;
+            this.bookmark = bookmark;
+            this.fetchedCount = fetchedCount;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder()
+                    .setBookmark(bookmark)
+                    .setFetchedRecordsCount(fetchedCount)
+                    .build();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+}
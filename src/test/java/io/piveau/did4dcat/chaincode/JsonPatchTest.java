@@ -0,0 +1,99 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class JsonPatchTest {
+
+    private static Object apply(final String document, final String patch) {
+        return JsonPatch.apply(new JSONObject(document), new JSONArray(patch));
+    }
+
+    private static void assertPatched(final String document, final String patch, final String expected) {
+        assertThat(JsonPatch.equal(apply(document, patch), new JSONObject(expected))).isTrue();
+    }
+
+    @Test
+    public void appliesObjectOperations() {
+        assertPatched("{\"foo\":\"bar\"}", "[{\"op\":\"add\",\"path\":\"/baz\",\"value\":\"qux\"}]",
+                "{\"foo\":\"bar\",\"baz\":\"qux\"}");
+        assertPatched("{\"baz\":\"qux\",\"foo\":\"bar\"}", "[{\"op\":\"remove\",\"path\":\"/baz\"}]",
+                "{\"foo\":\"bar\"}");
+        assertPatched("{\"baz\":\"qux\",\"foo\":\"bar\"}", "[{\"op\":\"replace\",\"path\":\"/baz\",\"value\":\"boo\"}]",
+                "{\"baz\":\"boo\",\"foo\":\"bar\"}");
+        assertPatched("{\"foo\":{\"bar\":\"baz\",\"waldo\":\"fred\"},\"qux\":{\"corge\":\"grault\"}}",
+                "[{\"op\":\"move\",\"from\":\"/foo/waldo\",\"path\":\"/qux/thud\"}]",
+                "{\"foo\":{\"bar\":\"baz\"},\"qux\":{\"corge\":\"grault\",\"thud\":\"fred\"}}");
+        assertPatched("{\"a\":{\"b\":1}}", "[{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/c\"},"
+                + "{\"op\":\"replace\",\"path\":\"/c/b\",\"value\":2}]", "{\"a\":{\"b\":1},\"c\":{\"b\":2}}");
+    }
+
+    @Test
+    public void appliesArrayOperations() {
+        assertPatched("{\"foo\":[\"bar\",\"baz\"]}", "[{\"op\":\"add\",\"path\":\"/foo/1\",\"value\":\"qux\"}]",
+                "{\"foo\":[\"bar\",\"qux\",\"baz\"]}");
+        assertPatched("{\"foo\":[\"bar\"]}", "[{\"op\":\"add\",\"path\":\"/foo/-\",\"value\":[\"abc\"]}]",
+                "{\"foo\":[\"bar\",[\"abc\"]]}");
+        assertPatched("{\"foo\":[\"bar\",\"qux\",\"baz\"]}", "[{\"op\":\"remove\",\"path\":\"/foo/1\"}]",
+                "{\"foo\":[\"bar\",\"baz\"]}");
+        assertPatched("{\"foo\":[\"all\",\"grass\",\"cows\",\"eat\"]}",
+                "[{\"op\":\"move\",\"from\":\"/foo/1\",\"path\":\"/foo/3\"}]",
+                "{\"foo\":[\"all\",\"cows\",\"eat\",\"grass\"]}");
+    }
+
+    @Test
+    public void unescapesPointers() {
+        assertPatched("{\"a/b\":1,\"m~n\":2}", "[{\"op\":\"test\",\"path\":\"/a~1b\",\"value\":1},"
+                + "{\"op\":\"remove\",\"path\":\"/m~0n\"}]", "{\"a/b\":1}");
+        assertThat(JsonPatch.parsePointer("/~01")).containsExactly("~1");
+    }
+
+    @Test
+    public void testComparesValues() {
+        assertPatched("{\"n\":1,\"o\":{\"a\":[1,\"x\"]}}", "[{\"op\":\"test\",\"path\":\"/n\",\"value\":1.0},"
+                + "{\"op\":\"test\",\"path\":\"/o\",\"value\":{\"a\":[1,\"x\"]}}]", "{\"n\":1,\"o\":{\"a\":[1,\"x\"]}}");
+
+        Throwable thrown = catchThrowable(() -> apply("{\"n\":1}", "[{\"op\":\"test\",\"path\":\"/n\",\"value\":\"1\"}]"));
+
+        assertThat(thrown).isInstanceOf(JSONException.class).hasMessage("Patch test 0 failed for /n");
+    }
+
+    @Test
+    public void rejectsInvalidOperations() {
+        String document = "{\"foo\":[\"bar\"],\"baz\":{}}";
+
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"remove\",\"path\":\"/missing\"}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Path element 'missing' does not exist");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"add\",\"path\":\"/foo/2\",\"value\":1}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Array index 2 is out of bounds");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"add\",\"path\":\"/foo/01\",\"value\":1}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Invalid array index '01'");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"move\",\"from\":\"/baz\",\"path\":\"/baz/x\"}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Patch operation 0 moves a value into itself");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"add\",\"path\":\"/x\"}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Patch operation 0 has no value");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"merge\",\"path\":\"/x\"}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Unknown patch operation 'merge' at 0");
+        assertThat(catchThrowable(() -> apply(document, "[{\"op\":\"remove\",\"path\":\"foo\"}]")))
+                .isInstanceOf(JSONException.class).hasMessage("Invalid JSON Pointer 'foo'");
+    }
+
+    @Test
+    public void leavesDocumentUnchanged() {
+        JSONObject document = new JSONObject("{\"foo\":{\"bar\":1}}");
+
+        catchThrowable(() -> JsonPatch.apply(document, new JSONArray("[{\"op\":\"remove\",\"path\":\"/foo/bar\"},"
+                + "{\"op\":\"test\",\"path\":\"/foo\",\"value\":false}]")));
+
+        assertThat(document.similar(new JSONObject("{\"foo\":{\"bar\":1}}"))).isTrue();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public final class RegistryDigestTest {
+
+    private final DatasetOwner owner = new DatasetOwner("user", "Glass01MSP");
+
+    private Dataset dataset(final String did, final String modified) {
+        return new Dataset(did, "{\"id\":\"" + did + "\",\"modified\":\"" + modified + "\"}", owner);
+    }
+
+    @Test
+    public void isIndependentOfOrder() {
+        RegistryDigest first = new RegistryDigest();
+        first.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+        first.add(dataset("did:dcat:dataset:2", "2022-10-01"));
+
+        RegistryDigest second = new RegistryDigest();
+        second.add(dataset("did:dcat:dataset:2", "2022-10-01"));
+        second.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+
+        assertThat(first.getDigest()).hasSize(64).isEqualTo(second.getDigest());
+        assertThat(first.getBuckets()).isEqualTo(second.getBuckets());
+    }
+
+    @Test
+    public void changeReplacesDocument() {
+        RegistryDigest digest = new RegistryDigest();
+        digest.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+        digest.change(dataset("did:dcat:dataset:1", "2022-10-01"), dataset("did:dcat:dataset:1", "2022-10-02"));
+
+        RegistryDigest expected = new RegistryDigest();
+        expected.add(dataset("did:dcat:dataset:1", "2022-10-02"));
+
+        assertThat(digest.getDigest()).isEqualTo(expected.getDigest());
+        assertThat(digest.getBuckets()).hasSize(1);
+
+        digest.remove(dataset("did:dcat:dataset:1", "2022-10-02"));
+        assertThat(digest.getBuckets()).isEmpty();
+        assertThat(digest.getDigest()).matches("0{64}");
+    }
+
+    @Test
+    public void addsHashesInsteadOfCancellingThem() {
+        RegistryDigest once = new RegistryDigest();
+        once.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+
+        RegistryDigest twice = new RegistryDigest();
+        twice.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+        twice.add(dataset("did:dcat:dataset:1", "2022-10-01"));
+
+        assertThat(twice.getDigest()).doesNotMatch("0{64}").isNotEqualTo(once.getDigest());
+
+        twice.remove(dataset("did:dcat:dataset:1", "2022-10-01"));
+        assertThat(twice.getDigest()).isEqualTo(once.getDigest());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Test;
+
+public final class TransactionStateTest {
+
+    private final Dataset dataset = new Dataset("did:dcat:dataset:123456", "{\"id\":\"did:dcat:dataset:123456\"}",
+            new DatasetOwner("user", "Glass01MSP"));
+
+    @Test
+    public void readsEachKeyOnce() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("did:dcat:dataset:123456")).thenReturn(DatasetCodec.encode(dataset));
+        TransactionState state = new TransactionState(stub);
+
+        Dataset first = state.getDataset("did:dcat:dataset:123456");
+        Dataset second = state.getDataset("did:dcat:dataset:123456");
+        state.getState("did:dcat:dataset:123456");
+
+        assertThat(first).isSameAs(second);
+        verify(stub, times(1)).getState("did:dcat:dataset:123456");
+    }
+
+    @Test
+    public void cachesMissingKeys() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        TransactionState state = new TransactionState(stub);
+
+        assertThat(state.getDataset("did:dcat:dataset:123456")).isNull();
+        assertThat(state.getDataset("did:dcat:dataset:123456")).isNull();
+        verify(stub, times(1)).getState("did:dcat:dataset:123456");
+    }
+
+    @Test
+    public void readsOwnWrites() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        TransactionState state = new TransactionState(stub);
+
+        state.putDataset(dataset);
+
+        assertThat(state.getDataset("did:dcat:dataset:123456")).isSameAs(dataset);
+        assertThat(state.getState("dataset:did:dcat:dataset:123456")).isEqualTo(DatasetCodec.encode(dataset));
+        verify(stub).putState("dataset:did:dcat:dataset:123456", DatasetCodec.encode(dataset));
+        verify(stub, times(0)).getState("did:dcat:dataset:123456");
+
+        state.delState("dataset:did:dcat:dataset:123456");
+
+        assertThat(state.getDataset("did:dcat:dataset:123456")).isNull();
+    }
+
+    @Test
+    public void countsStateCalls() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("dataset:did:dcat:dataset:123456")).thenReturn(DatasetCodec.encode(dataset));
+        TransactionState state = new TransactionState(stub);
+
+        state.getDataset("did:dcat:dataset:123456");
+        state.getDataset("did:dcat:dataset:123456");
+        state.putStringState("key", "value");
+
+        TransactionMetrics metrics = state.getMetrics();
+        assertThat(metrics.getStateReads()).isEqualTo(1);
+        assertThat(metrics.getBytesRead()).isEqualTo(DatasetCodec.encode(dataset).length);
+        assertThat(metrics.getStateWrites()).isEqualTo(1);
+        assertThat(metrics.getBytesWritten()).isEqualTo(5);
+    }
+
+    @Test
+    public void closesRangeQueries() throws Exception {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        @SuppressWarnings("unchecked")
+        QueryResultsIterator<KeyValue> results = mock(QueryResultsIterator.class);
+        when(stub.getStateByRange("a", "b")).thenReturn(results);
+        TransactionState state = new TransactionState(stub);
+
+        state.getStateByRange("a", "b").close();
+        verify(results).close();
+
+        doThrow(new Exception("closed")).when(results).close();
+        assertThatThrownBy(() -> state.getStateByRange("a", "b").close())
+                .isInstanceOf(IllegalStateException.class)
+                .hasCauseInstanceOf(Exception.class);
+    }
+}
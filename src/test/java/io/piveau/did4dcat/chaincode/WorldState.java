@@ -0,0 +1,238 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package io.piveau.did4dcat.chaincode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+
+/**
+ * Committed world state of a simulated peer, with the version of every key.
+ *
+ * Blocks are validated like Fabric does: a transaction is invalid if a key it read, or the result of
+ * a range query it ran, has changed since its simulation, also by an earlier valid transaction of the
+ * same block. Only the writes of valid transactions are applied, and recorded in the history of their keys
+ * like in the history database of a peer.
+ */
+final class WorldState {
+
+    /**
+     * Result of validating a transaction, named like the Fabric transaction validation codes.
+     */
+    enum ValidationCode {
+        VALID,
+        MVCC_READ_CONFLICT,
+        PHANTOM_READ_CONFLICT
+    }
+
+    /**
+     * Height of the block and number of the transaction that wrote a key.
+     */
+    static final class Version {
+
+        private final long blockNumber;
+
+        private final int txNumber;
+
+        Version(final long blockNumber, final int txNumber) {
+            this.blockNumber = blockNumber;
+            this.txNumber = txNumber;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Version other = (Version) obj;
+            return blockNumber == other.blockNumber && txNumber == other.txNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(blockNumber, txNumber);
+        }
+
+        @Override
+        public String toString() {
+            return blockNumber + ":" + txNumber;
+        }
+    }
+
+    static final class VersionedValue {
+
+        private final byte[] value;
+
+        private final Version version;
+
+        VersionedValue(final byte[] value, final Version version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        Version getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * A committed write or delete of a key.
+     */
+    static final class Modification implements KeyModification {
+
+        private final String txId;
+
+        private final byte[] value;
+
+        private final Instant timestamp;
+
+        Modification(final String txId, final byte[] value, final Instant timestamp) {
+            this.txId = txId;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value == null ? new byte[0] : value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return value == null;
+        }
+    }
+
+    private final NavigableMap<String, VersionedValue> state = new TreeMap<>();
+
+    private final Map<String, List<Modification>> history = new HashMap<>();
+
+    private long height = 1;
+
+    private int genesisTransactions;
+
+    /**
+     * Writes a key directly, as if it was part of the genesis block.
+     */
+    void put(final String key, final byte[] value) {
+        addModification(key, new Modification("genesis" + genesisTransactions, value, Instant.EPOCH));
+        state.put(key, new VersionedValue(value, new Version(0, genesisTransactions++)));
+    }
+
+    VersionedValue get(final String key) {
+        return state.get(key);
+    }
+
+    /**
+     * @return the committed keys from the start key (inclusive) to the end key (exclusive)
+     */
+    NavigableMap<String, VersionedValue> range(final String startKey, final String endKey) {
+        return endKey.isEmpty() ? state.tailMap(startKey, true) : state.subMap(startKey, true, endKey, false);
+    }
+
+    /**
+     * @return the committed modifications of a key, the newest first
+     */
+    List<Modification> history(final String key) {
+        List<Modification> modifications = new ArrayList<>(history.getOrDefault(key, Collections.emptyList()));
+        Collections.reverse(modifications);
+        return modifications;
+    }
+
+    int size() {
+        return state.size();
+    }
+
+    /**
+     * @return the number of the next block
+     */
+    long getHeight() {
+        return height;
+    }
+
+    /**
+     * Validates the transactions of a block in their order and applies the writes of the valid ones.
+     *
+     * @param transactions the simulated transactions
+     * @return the validation code of each transaction
+     */
+    List<ValidationCode> commitBlock(final List<InMemoryChaincodeStub> transactions) {
+        List<ValidationCode> codes = new ArrayList<>(transactions.size());
+
+        for (int txNumber = 0; txNumber < transactions.size(); txNumber++) {
+            InMemoryChaincodeStub transaction = transactions.get(txNumber);
+            ValidationCode code = validate(transaction);
+            codes.add(code);
+
+            if (code == ValidationCode.VALID) {
+                Version version = new Version(height, txNumber);
+                for (Map.Entry<String, byte[]> write : transaction.getWriteSet().entrySet()) {
+                    addModification(write.getKey(), new Modification(transaction.getTxId(), write.getValue(),
+                            transaction.getTxTimestamp()));
+                    if (write.getValue() == null) {
+                        state.remove(write.getKey());
+                    } else {
+                        state.put(write.getKey(), new VersionedValue(write.getValue(), version));
+                    }
+                }
+            }
+        }
+
+        height++;
+        return codes;
+    }
+
+    private void addModification(final String key, final Modification modification) {
+        history.computeIfAbsent(key, k -> new ArrayList<>()).add(modification);
+    }
+
+    private ValidationCode validate(final InMemoryChaincodeStub transaction) {
+        for (Map.Entry<String, Version> read : transaction.getReadSet().entrySet()) {
+            VersionedValue current = state.get(read.getKey());
+            if (!Objects.equals(read.getValue(), current == null ? null : current.getVersion())) {
+                return ValidationCode.MVCC_READ_CONFLICT;
+            }
+        }
+
+        for (InMemoryChaincodeStub.RangeRead rangeRead : transaction.getRangeReads()) {
+            if (!rangeRead.matches(this)) {
+                return ValidationCode.PHANTOM_READ_CONFLICT;
+            }
+        }
+
+        return ValidationCode.VALID;
+    }
+}